@@ -0,0 +1,96 @@
+package com.dockeriq.service.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Configuration
+public class AsyncConfig {
+
+    /**
+     * Executor for concurrent GridFS uploads. Uses virtual threads when the runtime provides them
+     * (Java 21+), otherwise a fixed pool sized to the node-wide upload limit.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService imageUploadExecutor(@Value("${dockeriq.images.upload.max-concurrent:16}") int maxConcurrent) {
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        if (virtualThreads != null) {
+            log.info("Image uploads will run on virtual threads");
+            return virtualThreads;
+        }
+        log.info("Image uploads will run on a fixed pool of {} threads", maxConcurrent);
+        return Executors.newFixedThreadPool(maxConcurrent, namedDaemonThreads("image-upload-"));
+    }
+
+    /**
+     * Bounded pipeline that finishes accepted shipment ingests. A full queue rejects new work
+     * instead of letting pending uploads pile up in memory.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService shipmentIngestExecutor(@Value("${dockeriq.ingest.workers:4}") int workers,
+                                                  @Value("${dockeriq.ingest.queue-capacity:200}") int queueCapacity) {
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), namedDaemonThreads("shipment-ingest-"));
+    }
+
+    /**
+     * CPU-bound pool for decoding and resizing images into variants
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService imageVariantExecutor(@Value("${dockeriq.images.variants.workers:2}") int workers) {
+        return Executors.newFixedThreadPool(workers, namedDaemonThreads("image-variant-"));
+    }
+
+    /**
+     * Writes shipment events to SSE subscribers. A write blocks while a client's socket buffer is
+     * full (until the server's write timeout), so sends run here rather than on the change stream
+     * thread. Each subscriber drains on at most one thread at a time, so the pool grows up to one
+     * thread per subscriber and a stalled client never holds up the others; idle threads exit.
+     * On Java 21+ virtual threads are used instead.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService shipmentEventExecutor(@Value("${dockeriq.shipments.events.max-subscribers:1000}") int maxSubscribers) {
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        if (virtualThreads != null) {
+            log.info("Shipment events will be sent on virtual threads");
+            return virtualThreads;
+        }
+        log.info("Shipment events will be sent on a pool of up to {} threads", maxSubscribers);
+        return new ThreadPoolExecutor(0, Math.max(maxSubscribers, 1), 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), namedDaemonThreads("shipment-events-"));
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads unavailable. Error: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
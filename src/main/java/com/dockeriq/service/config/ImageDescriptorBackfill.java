@@ -0,0 +1,105 @@
+package com.dockeriq.service.config;
+
+import com.dockeriq.service.model.ImageDescriptor;
+import com.dockeriq.service.model.Shipment;
+import com.dockeriq.service.service.GridFSService;
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * One-off backfill of embedded image descriptors for shipments created before they existed.
+ * Disabled by default; enable dockeriq.shipments.backfill-image-descriptors for a single start-up
+ * and turn it off again. Already backfilled shipments are skipped, so an interrupted run can be repeated.
+ */
+@Slf4j
+@Component
+public class ImageDescriptorBackfill implements CommandLineRunner {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFSService gridFSService;
+
+    @Value("${dockeriq.shipments.backfill-image-descriptors:false}")
+    private boolean enabled;
+
+    @Value("${dockeriq.shipments.backfill-batch-size:500}")
+    private int batchSize;
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        log.info("Backfilling image descriptors on existing shipments");
+        Query query = Query.query(Criteria.where("imageIds.0").exists(true).and("images").exists(false));
+        query.fields().include("imageIds");
+        query.cursorBatchSize(batchSize);
+
+        long updated = 0;
+        List<Shipment> batch = new ArrayList<>(batchSize);
+        try (Stream<Shipment> shipments = mongoTemplate.stream(query, Shipment.class)) {
+            for (Shipment shipment : (Iterable<Shipment>) shipments::iterator) {
+                batch.add(shipment);
+                if (batch.size() >= batchSize) {
+                    updated += backfill(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            updated += backfill(batch);
+        }
+        log.info("Backfilled image descriptors on {} shipments", updated);
+    }
+
+    /**
+     * Describe the images of a batch of shipments with one files query and one variants query,
+     * and write all descriptors with a single unordered bulk update
+     */
+    private int backfill(List<Shipment> shipments) {
+        List<String> imageIds = new ArrayList<>();
+        shipments.forEach(shipment -> imageIds.addAll(shipment.getImageIds()));
+        Map<String, GridFSFile> fileInfos = gridFSService.getImageInfos(imageIds);
+        Map<String, Map<String, String>> variantIds = gridFSService.findVariantIds(imageIds);
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Shipment.class);
+        for (Shipment shipment : shipments) {
+            List<ImageDescriptor> descriptors = new ArrayList<>();
+            for (String imageId : shipment.getImageIds()) {
+                GridFSFile fileInfo = fileInfos.get(imageId);
+                if (fileInfo == null) {
+                    // Listings answer from the descriptors alone, so the image is left out there too
+                    log.warn("Image {} of shipment {} no longer exists; leaving it out of the descriptors", imageId, shipment.getId());
+                    continue;
+                }
+                ImageDescriptor descriptor = gridFSService.describeImage(fileInfo);
+                descriptor.setVariants(variantIds.get(imageId));
+                descriptors.add(descriptor);
+            }
+            bulkOps.updateOne(
+                Query.query(Criteria.where("_id").is(shipment.getId()).and("images").exists(false)),
+                new Update().set("images", descriptors));
+        }
+        int modified = bulkOps.execute().getModifiedCount();
+        log.debug("Backfilled image descriptors on {} of {} shipments in batch", modified, shipments.size());
+        return modified;
+    }
+}
@@ -0,0 +1,85 @@
+package com.dockeriq.service.config;
+
+import com.dockeriq.service.model.Shipment;
+import com.dockeriq.service.model.ShipmentIngest;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the indexes the service's queries rely on. Automatic index creation is disabled,
+ * so indexes are declared here explicitly; createIndex is a no-op when the index already exists.
+ */
+@Slf4j
+@Component
+public class IndexInitializer implements CommandLineRunner {
+    
+    @Autowired
+    @Qualifier("gridFSFilesCollection")
+    private MongoCollection<Document> gridFSFilesCollection;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Value("${dockeriq.ingest.retention:7d}")
+    private Duration ingestRetention;
+    
+    @Override
+    public void run(String... args) {
+        MongoCollection<Document> shipments = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Shipment.class));
+        MongoCollection<Document> ingests = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ShipmentIngest.class));
+        
+        // Content-addressed image lookup for deduplication
+        createIndex(gridFSFilesCollection, Indexes.ascending("metadata.sha256"), "metadata_sha256");
+        // Generated variants (thumbnails) by original image and width
+        createIndex(gridFSFilesCollection, Indexes.ascending("metadata.variantOf", "metadata.width"), "metadata_variantOf_width");
+        // Shipment lookups by tracking number, single and batched
+        createIndex(shipments, Indexes.ascending("trackingNumber"), "trackingNumber");
+        // Keyset pagination of GET /shipments, newest first
+        createIndex(shipments, Indexes.descending("createdAt", "_id"), "createdAt_id");
+        // Status-filtered listings and exports, newest first
+        createIndex(shipments, Indexes.compoundIndex(Indexes.ascending("status"), Indexes.descending("createdAt", "_id")), "status_createdAt_id");
+        // Search filters: each leads with its equality field and ends with the page sort, so a filtered,
+        // date-bounded search is one index range scan in result order (tags is multikey)
+        createIndex(shipments, Indexes.compoundIndex(Indexes.ascending("createdBy"), Indexes.descending("createdAt", "_id")), "createdBy_createdAt_id");
+        createIndex(shipments, Indexes.compoundIndex(Indexes.ascending("basicInformation.destination"), Indexes.descending("createdAt", "_id")), "destination_createdAt_id");
+        createIndex(shipments, Indexes.compoundIndex(Indexes.ascending("basicInformation.carrier"), Indexes.descending("createdAt", "_id")), "carrier_createdAt_id");
+        createIndex(shipments, Indexes.compoundIndex(Indexes.ascending("basicInformation.priority"), Indexes.descending("createdAt", "_id")), "priority_createdAt_id");
+        createIndex(shipments, Indexes.compoundIndex(Indexes.ascending("tags"), Indexes.descending("createdAt", "_id")), "tags_createdAt_id");
+        // Shipments embedding an image, to record newly generated variants on them
+        createIndex(shipments, Indexes.ascending("images.id"), "images_id");
+        // Ingests whose lease ran out, for recovery by any node
+        createIndex(ingests, Indexes.ascending("status", "leaseUntil"), "status_leaseUntil");
+        // Finished ingests are only kept long enough for clients to poll their result
+        createIndex(ingests, Indexes.ascending("completedAt"),
+                new IndexOptions().name("completedAt_ttl").expireAfter(ingestRetention.toSeconds(), TimeUnit.SECONDS));
+    }
+    
+    private void createIndex(MongoCollection<Document> collection, Bson keys, String name) {
+        createIndex(collection, keys, new IndexOptions().name(name));
+    }
+    
+    private void createIndex(MongoCollection<Document> collection, Bson keys, IndexOptions options) {
+        String name = options.getName();
+        try {
+            collection.createIndex(keys, options.background(true));
+            log.debug("Ensured index {} on {}", name, collection.getNamespace().getCollectionName());
+        } catch (Exception e) {
+            log.warn("Failed to create index {} on {}. Error: {}", name, collection.getNamespace().getCollectionName(), e.getMessage());
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package com.dockeriq.service.config;
 
 import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.gridfs.GridFSBucket;
 import com.mongodb.client.gridfs.GridFSBuckets;
 
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
 import org.springframework.data.mongodb.core.mapping.event.LoggingEventListener;
 import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
 import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
@@ -16,6 +21,8 @@ import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
 @Configuration
 public class MongoConfig {
     
+    public static final String IMAGE_BUCKET = "shipment_images";
+    
     @Autowired
     private MongoClient mongoClient;
     
@@ -25,7 +32,31 @@ public class MongoConfig {
     @Bean
     public GridFSBucket gridFSBucket() {
         MongoDatabase database = mongoClient.getDatabase("dockeriq");
-        return GridFSBuckets.create(database, "shipment_images");
+        return GridFSBuckets.create(database, IMAGE_BUCKET);
+    }
+    
+    /**
+     * Files collection of the image bucket, for metadata queries and updates the bucket API does not offer
+     */
+    @Bean
+    public MongoCollection<Document> gridFSFilesCollection() {
+        return mongoClient.getDatabase("dockeriq").getCollection(IMAGE_BUCKET + ".files");
+    }
+    
+    /**
+     * Chunks collection of the image bucket, for ranged reads that seek straight to a chunk
+     */
+    @Bean
+    public MongoCollection<Document> gridFSChunksCollection() {
+        return mongoClient.getDatabase("dockeriq").getCollection(IMAGE_BUCKET + ".chunks");
+    }
+    
+    /**
+     * Shared container for change stream listeners; started and stopped with the application context
+     */
+    @Bean
+    public MessageListenerContainer messageListenerContainer(MongoTemplate mongoTemplate) {
+        return new DefaultMessageListenerContainer(mongoTemplate);
     }
     
     /**
@@ -1,14 +1,25 @@
 package com.dockeriq.service.controller;
 
 import com.dockeriq.service.service.GridFSService;
+import com.dockeriq.service.service.ImageArchiveService;
+import com.dockeriq.service.service.ImageVariantService;
 import com.dockeriq.service.service.ShipmentService;
+import com.mongodb.client.gridfs.model.GridFSFile;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -26,41 +37,76 @@ public class ImageController {
     @Autowired
     private ShipmentService shipmentService;
     
+    @Autowired
+    private ImageVariantService imageVariantService;
+    
+    @Autowired
+    private ImageArchiveService imageArchiveService;
+    
+    @Value("${dockeriq.images.archive.max-shipments:100}")
+    private int maxArchiveShipments;
+    
+    // Stored images are never modified in place (a changed image gets a new ID), so clients may cache them indefinitely
+    private static final CacheControl IMMUTABLE_IMAGE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    
     /**
-     * Get individual image by image ID with optimized response
+     * Get individual image by image ID with optimized response.
+     * Conditional requests (If-None-Match / If-Modified-Since) are answered with 304 from the file
+     * metadata alone, before any image data is read.
      * @param imageId GridFS image ID
-     * @return image with proper content type and caching headers
+     * @param width optional width in pixels; a resized variant is served instead of the original
+     * @param request current request, used to evaluate conditional headers
+     * @return image with proper content type and caching headers, written straight to the response stream
      */
     @GetMapping("/{imageId}")
-    public ResponseEntity<?> getImageById(@PathVariable String imageId) {
-        log.info("API: Retrieving image with ID: {}", imageId);
+    public ResponseEntity<StreamingResponseBody> getImageById(@PathVariable String imageId,
+                                                              @RequestParam(value = "w", required = false) Integer width,
+                                                              WebRequest request) {
+        log.info("API: Retrieving image with ID: {}, Width: {}", imageId, width);
         try {
-            // Get image metadata first
-            Map<String, Object> metadata = shipmentService.getImageMetadataById(imageId);
-            if (metadata == null) {
+            GridFSFile fileInfo = gridFSService.getImageInfo(imageId);
+            if (fileInfo == null) {
                 log.warn("API: Image not found with ID: {}", imageId);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body("Image not found with ID: " + imageId);
+                return textResponse(HttpStatus.NOT_FOUND, "Image not found with ID: " + imageId);
+            }
+            
+            // Variants are derived deterministically from the original, so the snapped width identifies them
+            Integer servedWidth = width != null && width > 0 ? imageVariantService.snapWidth(width) : null;
+            String eTag = servedWidth != null ? "\"" + imageId + "-w" + servedWidth + "\"" : "\"" + imageId + "\"";
+            if (request.checkNotModified(eTag, fileInfo.getUploadDate().getTime())) {
+                log.debug("API: Image with ID: {} not modified", imageId);
+                return null;
+            }
+            
+            // Swap in the resized variant when a width is requested
+            String servedId = imageId;
+            if (servedWidth != null) {
+                servedId = imageVariantService.resolveVariant(imageId, servedWidth);
+                if (!servedId.equals(imageId)) {
+                    fileInfo = gridFSService.getImageInfo(servedId);
+                    if (fileInfo == null) {
+                        log.warn("API: Variant {} of image {} disappeared", servedId, imageId);
+                        return textResponse(HttpStatus.NOT_FOUND, "Image not found with ID: " + imageId);
+                    }
+                }
             }
             
-            // Retrieve image data directly from GridFS
-            byte[] imageBytes = gridFSService.retrieveImage(imageId);
-            String contentType = (String) metadata.get("contentType");
+            GridFSFile servedFile = fileInfo;
+            String contentType = contentTypeOf(servedFile);
             
-            log.debug("API: Successfully retrieved image with ID: {}, Content-Type: {}, Size: {} bytes", 
-                    imageId, contentType, imageBytes.length);
+            log.debug("API: Serving image with ID: {}, Content-Type: {}, Size: {} bytes", 
+                    servedId, contentType, servedFile.getLength());
             
+            // ETag and Last-Modified were already written by checkNotModified
             return ResponseEntity.ok()
                 .contentType(MediaType.parseMediaType(contentType))
-                .header("Cache-Control", "public, max-age=7200") // Cache for 2 hours
-                .header("ETag", "\"" + imageId + "\"")
-                .header("Last-Modified", metadata.get("uploadDate").toString())
-                .body(imageBytes);
+                .contentLength(servedFile.getLength())
+                .cacheControl(IMMUTABLE_IMAGE)
+                .body(outputStream -> gridFSService.writeImage(servedFile, outputStream));
             
         } catch (Exception e) {
             log.error("API: Failed to retrieve image with ID: {}. Error: {}", imageId, e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Failed to retrieve image");
+            return textResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to retrieve image");
         }
     }
     
@@ -142,37 +188,87 @@ public class ImageController {
     }
     
     /**
-     * Stream image by image ID (for large images)
+     * Download every image of a shipment as a ZIP archive streamed straight from GridFS
+     * @param trackingNumber shipment tracking number
+     * @return ZIP archive with one entry per image
+     */
+    @GetMapping("tracking/{trackingNumber}/archive")
+    public ResponseEntity<StreamingResponseBody> getImageArchiveByTrackingNumber(@PathVariable String trackingNumber) {
+        log.info("API: Archiving images for shipment with tracking number: {}", trackingNumber);
+        return archiveResponse(List.of(trackingNumber), trackingNumber + "-images.zip");
+    }
+    
+    /**
+     * Download the images of several shipments as one ZIP archive, one folder per tracking number
+     * @param trackingNumbers shipment tracking numbers
+     * @return ZIP archive with one entry per image
+     */
+    @GetMapping("archive")
+    public ResponseEntity<StreamingResponseBody> getImageArchive(@RequestParam("trackingNumbers") List<String> trackingNumbers) {
+        log.info("API: Archiving images for {} shipments", trackingNumbers.size());
+        if (trackingNumbers.isEmpty() || trackingNumbers.size() > maxArchiveShipments) {
+            return textResponse(HttpStatus.BAD_REQUEST,
+                "Between 1 and " + maxArchiveShipments + " tracking numbers are required");
+        }
+        return archiveResponse(trackingNumbers, "shipment-images.zip");
+    }
+    
+    private ResponseEntity<StreamingResponseBody> archiveResponse(List<String> trackingNumbers, String filename) {
+        try {
+            // Resolve everything up front so a missing shipment is still a clean 404, not a broken download
+            List<ImageArchiveService.ArchiveEntry> entries = imageArchiveService.planArchive(trackingNumbers);
+            if (entries.isEmpty()) {
+                log.info("API: No images found to archive for tracking numbers: {}", trackingNumbers);
+                return textResponse(HttpStatus.NOT_FOUND, "No images found for tracking numbers: " + trackingNumbers);
+            }
+            
+            log.debug("API: Streaming archive of {} images", entries.size());
+            return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(outputStream -> imageArchiveService.writeArchive(entries, outputStream));
+            
+        } catch (Exception e) {
+            log.error("API: Failed to archive images for tracking numbers: {}. Error: {}", trackingNumbers, e.getMessage(), e);
+            return textResponse(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to archive images");
+        }
+    }
+    
+    /**
+     * Stream image by image ID (for large images). Supports byte ranges: a Range header
+     * yields 206 Partial Content (multipart/byteranges for several ranges) or 416 if unsatisfiable.
+     * Conditional requests are answered with 304 before any chunk is read.
      * @param imageId GridFS image ID
+     * @param request current request, used to evaluate conditional headers
      * @return streaming image response
      */
     @GetMapping("/{imageId}/stream")
-    public ResponseEntity<?> streamImageById(@PathVariable String imageId) {
+    public ResponseEntity<?> streamImageById(@PathVariable String imageId, WebRequest request) {
         log.info("API: Streaming image with ID: {}", imageId);
         try {
-            // Get image metadata first
-            Map<String, Object> metadata = shipmentService.getImageMetadataById(imageId);
-            if (metadata == null) {
+            GridFSFile fileInfo = gridFSService.getImageInfo(imageId);
+            if (fileInfo == null) {
                 log.warn("API: Image not found with ID: {}", imageId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Image not found with ID: " + imageId);
             }
             
-            // Use GridFS streaming for better performance
-            var inputStream = gridFSService.streamImage(imageId);
-            String contentType = (String) metadata.get("contentType");
-            Long size = (Long) metadata.get("size");
+            if (request.checkNotModified("\"" + imageId + "\"", fileInfo.getUploadDate().getTime())) {
+                log.debug("API: Image with ID: {} not modified", imageId);
+                return null;
+            }
+            
+            String contentType = contentTypeOf(fileInfo);
             
             log.debug("API: Successfully streaming image with ID: {}, Content-Type: {}, Size: {} bytes", 
-                    imageId, contentType, size);
+                    imageId, contentType, fileInfo.getLength());
             
+            // Spring MVC turns a Resource body into 206/416 responses when the request carries a Range header
             return ResponseEntity.ok()
                 .contentType(MediaType.parseMediaType(contentType))
-                .header("Cache-Control", "public, max-age=7200") // Cache for 2 hours
-                .header("ETag", "\"" + imageId + "\"")
-                .header("Last-Modified", metadata.get("uploadDate").toString())
-                .contentLength(size)
-                .body(inputStream);
+                .cacheControl(IMMUTABLE_IMAGE)
+                .header("Accept-Ranges", "bytes")
+                .body(gridFSService.getImageResource(fileInfo));
             
         } catch (Exception e) {
             log.error("API: Failed to stream image with ID: {}. Error: {}", imageId, e.getMessage(), e);
@@ -180,4 +276,18 @@ public class ImageController {
                 .body("Failed to stream image");
         }
     }
+    
+    private static ResponseEntity<StreamingResponseBody> textResponse(HttpStatus status, String message) {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(status)
+            .contentType(MediaType.TEXT_PLAIN)
+            .body(outputStream -> outputStream.write(body));
+    }
+    
+    private static String contentTypeOf(GridFSFile fileInfo) {
+        if (fileInfo.getMetadata() != null && fileInfo.getMetadata().getString("contentType") != null) {
+            return fileInfo.getMetadata().getString("contentType");
+        }
+        return "image/jpeg"; // default
+    }
 }
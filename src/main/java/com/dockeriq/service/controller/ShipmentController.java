@@ -1,8 +1,20 @@
 package com.dockeriq.service.controller;
 
+import com.dockeriq.service.dto.BulkResponse;
+import com.dockeriq.service.dto.BulkStatusUpdateRequest;
+import com.dockeriq.service.dto.ShipmentPage;
+import com.dockeriq.service.dto.ShipmentSearchFilter;
+import com.dockeriq.service.model.BasicInformation;
 import com.dockeriq.service.model.Shipment;
+import com.dockeriq.service.model.ShipmentIngest;
 import com.dockeriq.service.service.GridFSService;
+import com.dockeriq.service.service.ShipmentEventBroadcaster;
+import com.dockeriq.service.service.ShipmentExportService;
+import com.dockeriq.service.service.ShipmentIngestService;
+import com.dockeriq.service.service.ShipmentProjection;
 import com.dockeriq.service.service.ShipmentService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -10,20 +22,33 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
+import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Valid;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @Slf4j
 @RestController
@@ -32,6 +57,11 @@ import java.util.Optional;
 @Tag(name = "Shipments", description = "Shipment management APIs")
 public class ShipmentController {
     
+    private static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+    
+    // Returned by status updates unless other fields are requested
+    private static final ShipmentProjection STATUS_FIELDS = ShipmentProjection.parse("id,trackingNumber,status,updatedAt,lastModifiedBy");
+    
     @Autowired
     private ShipmentService shipmentService;
 
@@ -41,6 +71,21 @@ public class ShipmentController {
     @Autowired
     private GridFSService gridFSService;
     
+    @Autowired
+    private ShipmentIngestService shipmentIngestService;
+    
+    @Autowired
+    private ShipmentExportService shipmentExportService;
+    
+    @Autowired
+    private ShipmentEventBroadcaster shipmentEventBroadcaster;
+    
+    @Value("${dockeriq.shipments.bulk.max-items:1000}")
+    private int maxBulkItems;
+    
+    @Value("${dockeriq.shipments.page.max-limit:500}")
+    private int maxPageSize;
+    
     /**
      * Create shipment with images using multipart form data
      * @param shipmentDataJson JSON string containing shipment data
@@ -79,6 +124,91 @@ public class ShipmentController {
         }
     }
     
+    /**
+     * Accept a shipment with images for asynchronous processing
+     * @param shipmentDataJson JSON string containing shipment data
+     * @param images list of uploaded images (optional)
+     * @return ingest ID, reserved tracking number and status URL
+     */
+    @Operation(summary = "Ingest shipment with images asynchronously", description = "Accept a shipment with images and finish image storage in the background")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Shipment accepted for processing"),
+            @ApiResponse(responseCode = "400", description = "Invalid shipment data"),
+            @ApiResponse(responseCode = "503", description = "Ingest pipeline is full"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")
+    })
+    @PostMapping(value = "/ingest", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> ingestShipment(
+            @Parameter(description = "JSON string containing shipment data") @RequestParam("shipmentData") String shipmentDataJson,
+            @Parameter(description = "List of image files to attach") @RequestParam(value = "images", required = false) List<MultipartFile> images) {
+        
+        log.info("Accepting shipment ingest. Images count: {}", images != null ? images.size() : 0);
+        Shipment shipment;
+        try {
+            shipment = objectMapper.readValue(shipmentDataJson, Shipment.class);
+        } catch (Exception e) {
+            log.warn("Invalid shipment data provided: {}", e.getMessage());
+            return ResponseEntity.badRequest().body("Invalid shipment data");
+        }
+        
+        try {
+            ShipmentIngest ingest = shipmentIngestService.accept(shipment, images);
+            String statusUrl = "/shipments/ingest/" + ingest.getId();
+            Map<String, Object> response = new HashMap<>();
+            response.put("ingestId", ingest.getId());
+            response.put("trackingNumber", ingest.getTrackingNumber());
+            response.put("status", ingest.getStatus());
+            response.put("statusUrl", statusUrl);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header("Location", statusUrl)
+                .body(response);
+        } catch (ConstraintViolationException e) {
+            Map<String, String> errors = new HashMap<>();
+            e.getConstraintViolations().forEach(violation -> errors.put(violation.getPropertyPath().toString(), violation.getMessage()));
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Invalid shipment data");
+            response.put("errors", errors);
+            return ResponseEntity.badRequest().body(response);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "5")
+                .body("Shipment ingest is busy, retry later");
+        } catch (Exception e) {
+            log.error("Failed to accept shipment ingest. Error: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Failed to accept shipment: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Get status of an asynchronous shipment ingest
+     * @param id ingest ID
+     * @return ingest status
+     */
+    @Operation(summary = "Get ingest status", description = "Poll the status of an asynchronous shipment ingest")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ingest found"),
+            @ApiResponse(responseCode = "404", description = "Ingest not found")
+    })
+    @GetMapping("/ingest/{id}")
+    public ResponseEntity<?> getIngestStatus(@Parameter(description = "Ingest ID") @PathVariable String id) {
+        log.debug("Retrieving shipment ingest status: {}", id);
+        try {
+            Optional<ShipmentIngest> ingest = shipmentIngestService.getIngest(id);
+            if (ingest.isPresent()) {
+                return ResponseEntity.ok()
+                    .header("Cache-Control", "no-store")
+                    .body(ingest.get());
+            }
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body("Ingest not found with id: " + id);
+        } catch (Exception e) {
+            log.error("Failed to retrieve ingest status with ID: {}. Error: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Failed to retrieve ingest status");
+        }
+    }
+    
     /**
      * Create shipment without images using JSON
      * @param addShipment shipment data
@@ -108,25 +238,122 @@ public class ShipmentController {
         }
     }
     
+    /**
+     * Create shipments in bulk from a JSON array or an NDJSON stream
+     * @param request HTTP request carrying the shipment payloads
+     * @param principal authenticated user
+     * @return per-item results
+     */
+    @Operation(summary = "Create shipments in bulk", description = "Create many shipments from a JSON array or NDJSON stream with per-item results")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "All shipments created"),
+            @ApiResponse(responseCode = "207", description = "Some shipments could not be created"),
+            @ApiResponse(responseCode = "400", description = "Malformed payload or too many items"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")
+    })
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> createShipmentsBulk(HttpServletRequest request, Principal principal) {
+        log.info("Creating shipments in bulk");
+        List<Shipment> shipments = new ArrayList<>();
+        // Both a top-level JSON array and newline-delimited objects are read item by item
+        try (MappingIterator<Shipment> items = objectMapper.readerFor(Shipment.class).readValues(request.getInputStream())) {
+            while (items.hasNextValue()) {
+                if (shipments.size() == maxBulkItems) {
+                    log.warn("Bulk shipment request exceeds {} items", maxBulkItems);
+                    return ResponseEntity.badRequest().body("Bulk request exceeds " + maxBulkItems + " items");
+                }
+                shipments.add(items.nextValue());
+            }
+        } catch (Exception e) {
+            log.warn("Malformed bulk shipment payload at item {}: {}", shipments.size(), e.getMessage());
+            return ResponseEntity.badRequest().body("Malformed shipment payload at item " + shipments.size());
+        }
+        
+        try {
+            BulkResponse response = shipmentService.createShipmentsBulk(shipments,
+                    principal != null ? principal.getName() : null);
+            log.info("Bulk shipment creation finished. Created: {}, Failed: {}", response.getSucceeded(), response.getFailed());
+            HttpStatus status = response.getFailed() == 0 ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+            return ResponseEntity.status(status).body(response);
+        } catch (Exception e) {
+            log.error("Failed to create shipments in bulk. Error: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Failed to create shipments: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Export shipments for reporting, streamed straight from a database cursor
+     * @param format ndjson (default) or csv
+     * @param from inclusive lower bound on createdAt
+     * @param to exclusive upper bound on createdAt
+     * @param statuses statuses to include
+     * @return streamed export
+     */
+    @Operation(summary = "Export shipments", description = "Stream shipments as NDJSON or CSV, optionally filtered by creation date range and status")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Export streamed"),
+            @ApiResponse(responseCode = "400", description = "Unsupported format")
+    })
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportShipments(
+            @Parameter(description = "ndjson or csv") @RequestParam(value = "format", defaultValue = ShipmentExportService.FORMAT_NDJSON) String format,
+            @Parameter(description = "Created at or after (ISO date-time)") @RequestParam(value = "from", required = false)
+                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Created before (ISO date-time)") @RequestParam(value = "to", required = false)
+                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "Statuses to include") @RequestParam(value = "status", required = false) List<String> statuses) {
+        log.info("Exporting shipments. Format: {}, From: {}, To: {}, Statuses: {}", format, from, to, statuses);
+        String normalizedFormat = format.toLowerCase();
+        MediaType contentType;
+        if (ShipmentExportService.FORMAT_NDJSON.equals(normalizedFormat)) {
+            contentType = MediaType.APPLICATION_NDJSON;
+        } else if (ShipmentExportService.FORMAT_CSV.equals(normalizedFormat)) {
+            contentType = new MediaType("text", "csv", StandardCharsets.UTF_8);
+        } else {
+            log.warn("Unsupported export format: {}", format);
+            return ResponseEntity.badRequest()
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(outputStream -> outputStream.write(("Unsupported export format: " + format).getBytes(StandardCharsets.UTF_8)));
+        }
+        
+        String filename = "shipments." + normalizedFormat;
+        return ResponseEntity.ok()
+            .contentType(contentType)
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+            .body(outputStream -> shipmentExportService.export(normalizedFormat, from, to, statuses, outputStream));
+    }
+    
     /**
      * Get shipment by ID
      * @param id shipment ID
+     * @param fields optional comma-separated fields to return
      * @return shipment if found
      */
     @Operation(summary = "Get shipment by ID", description = "Retrieve a shipment by its unique identifier")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shipment found"),
+            @ApiResponse(responseCode = "400", description = "Unknown field requested"),
             @ApiResponse(responseCode = "404", description = "Shipment not found"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<?> getShipmentById(@Parameter(description = "Shipment ID") @PathVariable String id) {
+    public ResponseEntity<?> getShipmentById(@Parameter(description = "Shipment ID") @PathVariable String id,
+            @Parameter(description = "Comma-separated fields to return") @RequestParam(value = "fields", required = false) String fields) {
         log.info("Retrieving shipment by ID: {}", id);
+        ShipmentProjection projection;
+        try {
+            projection = ShipmentProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         try {
-            Optional<Shipment> shipment = shipmentService.getShipmentById(id);
+            Optional<Shipment> shipment = shipmentService.getShipmentById(id, projection);
             if (shipment.isPresent()) {
                 log.debug("Shipment found with ID: {}", id);
-                return ResponseEntity.ok(shipment.get());
+                return ResponseEntity.ok()
+                    .eTag(versionTag(shipment.get()))
+                    .body(toResponse(shipment.get(), projection));
             } else {
                 log.warn("Shipment not found with ID: {}", id);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -142,16 +369,24 @@ public class ShipmentController {
     /**
      * Get shipment by tracking number
      * @param trackingNumber tracking number
+     * @param fields optional comma-separated fields to return
      * @return shipment if found
      */
     @GetMapping("/tracking/{trackingNumber}")
-    public ResponseEntity<?> getShipmentByTrackingNumber(@PathVariable String trackingNumber) {
+    public ResponseEntity<?> getShipmentByTrackingNumber(@PathVariable String trackingNumber,
+            @RequestParam(value = "fields", required = false) String fields) {
         log.info("Retrieving shipment by tracking number: {}", trackingNumber);
+        ShipmentProjection projection;
+        try {
+            projection = ShipmentProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         try {
-            Optional<Shipment> shipment = shipmentService.getShipmentByTrackingNumber(trackingNumber);
+            Optional<Shipment> shipment = shipmentService.getShipmentByTrackingNumber(trackingNumber, projection);
             if (shipment.isPresent()) {
                 log.debug("Shipment found with tracking number: {}", trackingNumber);
-                return ResponseEntity.ok(shipment.get());
+                return ResponseEntity.ok(toResponse(shipment.get(), projection));
             } else {
                 log.warn("Shipment not found with tracking number: {}", trackingNumber);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -166,21 +401,45 @@ public class ShipmentController {
     }
     
     /**
-     * Get all shipments
-     * @return list of all shipments
+     * Get shipments one page at a time, newest first
+     * @param limit maximum number of shipments on the page
+     * @param cursor cursor from the previous page's next field; omit for the first page
+     * @param fields optional comma-separated fields to return for each shipment
+     * @return page of shipments and the cursor of the next page
      */
-    @Operation(summary = "Get all shipments", description = "Retrieve all shipments in the system")
+    @Operation(summary = "List shipments", description = "Retrieve shipments newest first, using cursor-based pagination")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Shipments retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or limit"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @GetMapping
-    public ResponseEntity<?> getAllShipments() {
-        log.info("Retrieving all shipments");
+    public ResponseEntity<?> getShipments(
+            @Parameter(description = "Page size") @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @Parameter(description = "Cursor from the previous page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Comma-separated fields to return") @RequestParam(value = "fields", required = false) String fields) {
+        log.info("Retrieving shipments page. Limit: {}, Cursor: {}", limit, cursor);
+        if (limit < 1 || limit > maxPageSize) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + maxPageSize);
+        }
+        ShipmentProjection projection;
+        try {
+            projection = ShipmentProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         try {
-            List<Shipment> shipments = shipmentService.getAllShipments();
-            log.debug("Retrieved {} shipments", shipments.size());
-            return ResponseEntity.ok(shipments);
+            ShipmentPage page = shipmentService.getShipmentsPage(cursor, limit, projection);
+            if (projection != null) {
+                page.setItems(page.getItems().stream()
+                    .map(shipment -> projection.toResponse((Shipment) shipment, objectMapper))
+                    .toList());
+            }
+            log.debug("Retrieved {} shipments", page.getItems().size());
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid shipments cursor: {}", cursor);
+            return ResponseEntity.badRequest().body("Invalid cursor");
         } catch (Exception e) {
             log.error("Failed to retrieve shipments. Error: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -188,19 +447,119 @@ public class ShipmentController {
         }
     }
     
+    /**
+     * Stream shipment creations, status changes and deletions as Server-Sent Events
+     * @param statuses statuses to receive events for
+     * @param createdBy creator to receive events for
+     * @param tag tag a shipment must carry
+     * @param lastEventId ID of the last event received, sent by EventSource when it reconnects
+     * @return event stream
+     */
+    @Operation(summary = "Shipment events", description = "Server-Sent Events of shipment creations, status changes and deletions, resumable with Last-Event-ID")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Event stream opened"),
+            @ApiResponse(responseCode = "503", description = "Too many subscribers on this node")
+    })
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamShipmentEvents(
+            @Parameter(description = "Statuses to include") @RequestParam(value = "status", required = false) List<String> statuses,
+            @Parameter(description = "Creator to include") @RequestParam(value = "createdBy", required = false) String createdBy,
+            @Parameter(description = "Tag to include") @RequestParam(value = "tag", required = false) String tag,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        log.info("Opening shipment event stream. Statuses: {}, Created by: {}, Tag: {}, Resuming: {}",
+                statuses, createdBy, tag, lastEventId != null);
+        try {
+            return ResponseEntity.ok(shipmentEventBroadcaster.subscribe(statuses, createdBy, tag, lastEventId));
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejected shipment event subscriber: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "5")
+                .build();
+        }
+    }
+    
+    /**
+     * Search shipments by status, creation time, creator, destination, carrier, priority and tags
+     * @param filter search filters; all given filters must match
+     * @param limit maximum number of shipments on the page
+     * @param cursor cursor from the previous page's next field; omit for the first page
+     * @param fields optional comma-separated fields to return for each shipment
+     * @param facets whether to include counts of all matching shipments per status and carrier
+     * @return page of matching shipments and the cursor of the next page
+     */
+    @Operation(summary = "Search shipments", description = "Filter shipments newest first, using cursor-based pagination and optional facet counts")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shipments retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid filter, cursor or limit, or facets without an indexed filter"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<?> searchShipments(
+            @ParameterObject ShipmentSearchFilter filter,
+            @Parameter(description = "Page size") @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @Parameter(description = "Cursor from the previous page") @RequestParam(value = "cursor", required = false) String cursor,
+            @Parameter(description = "Comma-separated fields to return") @RequestParam(value = "fields", required = false) String fields,
+            @Parameter(description = "Include status and carrier counts") @RequestParam(value = "facets", defaultValue = "false") boolean facets) {
+        log.info("Searching shipments. Filter: {}, Limit: {}, Cursor: {}, Facets: {}", filter, limit, cursor, facets);
+        if (limit < 1 || limit > maxPageSize) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + maxPageSize);
+        }
+        ShipmentProjection projection;
+        try {
+            projection = ShipmentProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        try {
+            ShipmentPage page = shipmentService.searchShipments(filter, cursor, limit, projection, facets);
+            if (projection != null) {
+                page.setItems(page.getItems().stream()
+                    .map(shipment -> projection.toResponse((Shipment) shipment, objectMapper))
+                    .toList());
+            }
+            log.debug("Found {} shipments", page.getItems().size());
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid shipment search. Error: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Failed to search shipments. Error: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Failed to search shipments");
+        }
+    }
+    
+    private Object toResponse(Shipment shipment, ShipmentProjection projection) {
+        return projection != null ? projection.toResponse(shipment, objectMapper) : shipment;
+    }
+    
     /**
      * Update shipment status
      * @param id shipment ID
      * @param status new status
+     * @param expectedStatus optional status the shipment must currently have
+     * @param fields optional comma-separated fields to return; defaults to the status fields
      * @return updated shipment
      */
     @PutMapping("/{id}/status")
-    public ResponseEntity<?> updateShipmentStatus(@PathVariable String id, @RequestBody String status) {
-        log.info("Updating shipment status. ID: {}, New status: {}", id, status);
+    public ResponseEntity<?> updateShipmentStatus(@PathVariable String id, @RequestBody String status,
+            @RequestParam(value = "expectedStatus", required = false) String expectedStatus,
+            @RequestParam(value = "fields", required = false) String fields) {
+        log.info("Updating shipment status. ID: {}, New status: {}, Expected status: {}", id, status, expectedStatus);
+        ShipmentProjection projection;
+        try {
+            projection = fields != null ? ShipmentProjection.parse(fields) : STATUS_FIELDS;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         try {
-            Shipment updatedShipment = shipmentService.updateShipmentStatus(id, status, "system");
+            Shipment updatedShipment = shipmentService.updateShipmentStatus(id, status, expectedStatus, "system", projection);
             log.info("Successfully updated shipment status. ID: {}, New status: {}", id, status);
-            return ResponseEntity.ok(updatedShipment);
+            return ResponseEntity.ok(toResponse(updatedShipment, projection));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (RuntimeException e) {
             log.warn("Shipment not found for status update. ID: {}", id);
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -213,6 +572,120 @@ public class ShipmentController {
         }
     }
     
+    /**
+     * Move many shipments to one status in a single database write
+     * @param request shipment IDs or tracking numbers, and the new status
+     * @param principal authenticated user
+     * @return per-item results
+     */
+    @Operation(summary = "Update shipment statuses in bulk", description = "Move shipments, by ID or tracking number, to one status with per-item results")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All shipments updated or already in the status"),
+            @ApiResponse(responseCode = "207", description = "Some shipments were not found or could not move to the status"),
+            @ApiResponse(responseCode = "400", description = "Unknown status, or missing or too many shipments"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")
+    })
+    @PatchMapping(value = "/status", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> updateShipmentStatusBulk(@RequestBody BulkStatusUpdateRequest request, Principal principal) {
+        boolean byId = request.getIds() != null && !request.getIds().isEmpty();
+        boolean byTrackingNumber = request.getTrackingNumbers() != null && !request.getTrackingNumbers().isEmpty();
+        if (byId == byTrackingNumber) {
+            return ResponseEntity.badRequest().body("Provide either ids or trackingNumbers");
+        }
+        int count = byId ? request.getIds().size() : request.getTrackingNumbers().size();
+        if (count > maxBulkItems) {
+            log.warn("Bulk status request exceeds {} items", maxBulkItems);
+            return ResponseEntity.badRequest().body("Bulk request exceeds " + maxBulkItems + " items");
+        }
+        log.info("Updating status of {} shipments in bulk. New status: {}", count, request.getStatus());
+        try {
+            BulkResponse response = shipmentService.updateShipmentStatusBulk(
+                    byId ? request.getIds() : null, byId ? null : request.getTrackingNumbers(),
+                    request.getStatus(), principal != null ? principal.getName() : "system");
+            log.info("Bulk status update finished. Succeeded: {}, Failed: {}", response.getSucceeded(), response.getFailed());
+            HttpStatus status = response.getFailed() == 0 ? HttpStatus.OK : HttpStatus.MULTI_STATUS;
+            return ResponseEntity.status(status).body(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Failed to update shipment statuses in bulk. Error: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Failed to update shipment statuses: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Partially update a shipment with a JSON Merge Patch (RFC 7386); only changed fields are written
+     * @param id shipment ID
+     * @param patch merge patch document
+     * @param ifMatch optional ETag of the version the client last read
+     * @param principal authenticated user
+     * @return patched shipment
+     */
+    @Operation(summary = "Patch shipment", description = "Apply a JSON Merge Patch to basicInformation, customerFields, tags, notes or deviceInformation")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shipment patched"),
+            @ApiResponse(responseCode = "400", description = "Malformed patch or invalid values"),
+            @ApiResponse(responseCode = "404", description = "Shipment not found"),
+            @ApiResponse(responseCode = "412", description = "Shipment changed since the If-Match version"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")
+    })
+    @PatchMapping(value = "/{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> patchShipment(@PathVariable String id, @RequestBody JsonNode patch,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            Principal principal) {
+        log.info("Patching shipment. ID: {}, If-Match: {}", id, ifMatch);
+        Long expectedVersion;
+        try {
+            expectedVersion = parseVersionTag(ifMatch);
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().body("Invalid If-Match header: " + ifMatch);
+        }
+        try {
+            Shipment patched = shipmentService.patchShipment(id, patch, expectedVersion,
+                    principal != null ? principal.getName() : "system");
+            log.info("Successfully patched shipment. ID: {}", id);
+            return ResponseEntity.ok().eTag(versionTag(patched)).body(patched);
+        } catch (ConstraintViolationException e) {
+            Map<String, String> errors = new HashMap<>();
+            e.getConstraintViolations().forEach(violation -> errors.put(
+                (violation.getRootBeanClass() == BasicInformation.class ? "basicInformation." : "") + violation.getPropertyPath(),
+                violation.getMessage()));
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Invalid shipment data");
+            response.put("errors", errors);
+            return ResponseEntity.badRequest().body(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Shipment not found for patch. ID: {}", id);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body("Shipment not found with id: " + id);
+        } catch (Exception e) {
+            log.error("Failed to patch shipment. ID: {}. Error: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Failed to patch shipment");
+        }
+    }
+    
+    // Shipments created before versioning count as version 0
+    private static String versionTag(Shipment shipment) {
+        return "\"" + (shipment.getVersion() != null ? shipment.getVersion() : 0L) + "\"";
+    }
+    
+    private static Long parseVersionTag(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        return Long.parseLong(tag.replace("\"", ""));
+    }
+    
     /**
      * Delete shipment
      * @param id shipment ID
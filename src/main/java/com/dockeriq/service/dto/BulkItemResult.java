@@ -0,0 +1,19 @@
+package com.dockeriq.service.dto;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkItemResult {
+
+    private int index;
+    private String status;
+    private String id;
+    private String trackingNumber;
+    private String message;
+    private Map<String, String> errors;
+}
@@ -0,0 +1,24 @@
+package com.dockeriq.service.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class BulkResponse {
+
+    private int total;
+    private int succeeded;
+    private int failed;
+    private List<BulkItemResult> items;
+
+    public static BulkResponse of(List<BulkItemResult> items, String... successStatuses) {
+        List<String> succeeded = List.of(successStatuses);
+        BulkResponse response = new BulkResponse();
+        response.setItems(items);
+        response.setTotal(items.size());
+        response.setSucceeded((int) items.stream().filter(item -> succeeded.contains(item.getStatus())).count());
+        response.setFailed(response.getTotal() - response.getSucceeded());
+        return response;
+    }
+}
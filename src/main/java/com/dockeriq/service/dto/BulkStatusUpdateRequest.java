@@ -0,0 +1,16 @@
+package com.dockeriq.service.dto;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * Body of PATCH /shipments/status: the shipments to move, by ID or by tracking number, and their new status
+ */
+@Data
+public class BulkStatusUpdateRequest {
+
+    private List<String> ids;
+    private List<String> trackingNumbers;
+    private String status;
+}
@@ -0,0 +1,26 @@
+package com.dockeriq.service.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+/**
+ * One entry of the GET /shipments/events feed. Deleted events carry only the type and ID;
+ * reset events carry only the type.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ShipmentEvent {
+
+    private String type; // created, status, deleted or reset
+    private String id;
+    private String trackingNumber;
+    private String status;
+    private String createdBy;
+    private List<String> tags;
+    private String lastModifiedBy;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,19 @@
+package com.dockeriq.service.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+@Data
+public class ShipmentPage {
+
+    private List<?> items; // Shipment objects, or maps of the requested fields when fields= is given
+    private int limit;
+    private String next; // opaque cursor for the following page; null on the last page
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Map<String, Long>> facets; // search only: facet name -> value -> matching shipments
+}
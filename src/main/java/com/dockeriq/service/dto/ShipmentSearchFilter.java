@@ -0,0 +1,30 @@
+package com.dockeriq.service.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import lombok.Data;
+
+/**
+ * Filters of GET /shipments/search; every filter is optional and all given filters must match.
+ * Text filters are exact matches so they can be answered from an index.
+ */
+@Data
+public class ShipmentSearchFilter {
+
+    private List<String> status;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from; // inclusive lower bound on createdAt
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to; // exclusive upper bound on createdAt
+
+    private String createdBy;
+    private String destination;
+    private String carrier;
+    private String priority;
+    private List<String> tag; // shipments must carry every given tag
+}
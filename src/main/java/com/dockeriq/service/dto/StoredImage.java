@@ -0,0 +1,17 @@
+package com.dockeriq.service.dto;
+
+import java.util.Date;
+
+import lombok.Data;
+
+@Data
+public class StoredImage {
+
+    private String id;
+    private String filename;
+    private String contentType;
+    private long size;
+    private long crc32;
+    private String sha256;
+    private Date uploadDate;
+}
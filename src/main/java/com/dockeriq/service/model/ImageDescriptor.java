@@ -0,0 +1,26 @@
+package com.dockeriq.service.model;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import lombok.Data;
+
+/**
+ * Copy of a stored image's GridFS metadata embedded in its shipment, so image listings
+ * are answered from the shipment document without touching GridFS.
+ */
+@Data
+public class ImageDescriptor {
+
+    // Explicit field name keeps this a plain "id" string instead of being mapped to an ObjectId _id
+    @Field("id")
+    private String id; // GridFS file ID
+    private String filename;
+    private String contentType;
+    private long size;
+    private Date uploadDate;
+    private Long crc32;
+    private Map<String, String> variants; // width in pixels -> GridFS file ID of the resized variant
+}
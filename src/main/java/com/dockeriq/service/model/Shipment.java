@@ -27,6 +27,7 @@ public class Shipment {
     private BasicInformation basicInformation;
     private Map<String, String> customerFields;
     private List<String> imageIds; // GridFS file IDs
+    private List<ImageDescriptor> images; // metadata of imageIds, in the same order
     private String notes;
 
     @Valid
@@ -41,4 +42,7 @@ public class Shipment {
     private String createdBy;
     private String lastModifiedBy;
     private List<String> tags;
+    
+    // Incremented by every partial update; serves as the ETag for optimistic concurrency
+    private Long version;
 }
@@ -0,0 +1,56 @@
+package com.dockeriq.service.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Data;
+
+/**
+ * An accepted shipment upload whose images and final shipment write are finished in the background.
+ */
+@Data
+@Document(collection = "shipment_ingests")
+public class ShipmentIngest {
+
+    public static final String PENDING = "PENDING";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    private String id;
+
+    private String trackingNumber;
+    private String shipmentId;
+    private String status;
+    private int attempts;
+    private String lastError;
+
+    // Payload and staged files are only needed by the pipeline, not by status pollers
+    @JsonIgnore
+    private Shipment shipment;
+    @JsonIgnore
+    private List<StagedImage> stagedImages;
+    @JsonIgnore
+    private String node;
+    // Until when the node is working on the ingest; after that any node may claim it
+    @JsonIgnore
+    private LocalDateTime leaseUntil;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    // Set when the ingest completes or fails; finished ingests expire after dockeriq.ingest.retention
+    private LocalDateTime completedAt;
+
+    @Data
+    public static class StagedImage {
+        private String path;
+        private String filename;
+        private String contentType;
+    }
+}
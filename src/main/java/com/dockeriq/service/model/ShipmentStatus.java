@@ -0,0 +1,69 @@
+package com.dockeriq.service.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shipment statuses and the transitions allowed between them. Statuses are stored as their
+ * display names; shipments with a status outside this set (older data) may move to any status.
+ */
+public final class ShipmentStatus {
+
+    public static final String IN_TRANSIT = "In Transit";
+    public static final String AT_DOCK = "At Dock";
+    public static final String DELIVERED = "Delivered";
+    public static final String CANCELLED = "Cancelled";
+
+    // Allowed next statuses per status; delivered and cancelled shipments are final
+    private static final Map<String, Set<String>> TRANSITIONS = new LinkedHashMap<>();
+
+    static {
+        TRANSITIONS.put(IN_TRANSIT, Set.of(AT_DOCK, DELIVERED, CANCELLED));
+        TRANSITIONS.put(AT_DOCK, Set.of(IN_TRANSIT, DELIVERED, CANCELLED));
+        TRANSITIONS.put(DELIVERED, Set.of());
+        TRANSITIONS.put(CANCELLED, Set.of());
+    }
+
+    private ShipmentStatus() {
+    }
+
+    /**
+     * Resolve a status name, ignoring case, surrounding JSON quotes and underscores for spaces (e.g. "AT_DOCK")
+     * @param status status as given by a client
+     * @return stored status name, or null if it is not a known status
+     */
+    public static String normalize(String status) {
+        if (status == null) {
+            return null;
+        }
+        String name = status.replace("\"", "").trim().replace('_', ' ');
+        return TRANSITIONS.keySet().stream()
+            .filter(known -> known.equalsIgnoreCase(name))
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Whether a shipment may move from one status to another
+     * @param from current status; unknown statuses may move anywhere
+     * @param to known target status
+     * @return true if the transition is allowed
+     */
+    public static boolean canTransition(String from, String to) {
+        Set<String> next = TRANSITIONS.get(from);
+        return next == null || next.contains(to);
+    }
+
+    /**
+     * Known statuses that may not move to the target, for use as a $nin precondition in updates
+     * @param to known target status
+     * @return statuses a shipment must not have for the transition to be allowed
+     */
+    public static List<String> blockedSources(String to) {
+        return TRANSITIONS.keySet().stream()
+            .filter(from -> !canTransition(from, to))
+            .toList();
+    }
+}
@@ -0,0 +1,9 @@
+package com.dockeriq.service.repository;
+
+import com.dockeriq.service.model.ShipmentIngest;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ShipmentIngestRepository extends MongoRepository<ShipmentIngest, String> {
+}
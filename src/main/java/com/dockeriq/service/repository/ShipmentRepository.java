@@ -4,6 +4,8 @@ import com.dockeriq.service.model.Shipment;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,5 +13,7 @@ public interface ShipmentRepository extends MongoRepository<Shipment, String> {
     
     Optional<Shipment> findByTrackingNumber(String trackingNumber);
     
+    List<Shipment> findByTrackingNumberIn(Collection<String> trackingNumbers);
+    
     boolean existsByTrackingNumber(String trackingNumber);
 }
@@ -1,7 +1,5 @@
 package com.dockeriq.service.security;
 
-import com.dockeriq.service.model.User;
-import com.dockeriq.service.repository.UserRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.MalformedJwtException;
@@ -34,10 +32,11 @@ import java.util.Optional;
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
 
-    private final JwtUtil jwtUtil = new JwtUtil();
+    @Autowired
+    private JwtUtil jwtUtil;
     
     @Autowired
-    private UserRepository userRepository;
+    private UserPrincipalCache userPrincipalCache;
 
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request,
@@ -50,35 +49,37 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             String token = authHeader.substring(7); // remove "Bearer "
             
             try {
-                String username = jwtUtil.extractUsername(token);
+                // Single parse-and-verify pass; signature and expiry are checked here
+                JwtClaims claims = jwtUtil.verifyToken(token);
+                String username = claims.getSubject();
                 
                 // Debug logging
                 log.info("JWT Debug - Username: {}", username);
 
                 if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    if (jwtUtil.validateToken(token, username)) {
-                        // Fetch user role from database using username (email)
-                        Optional<User> userOptional = userRepository.findByEmail(username);
+                    if (!claims.isExpired()) {
+                        // Resolve role and active flag from the principal cache; only misses reach the database
+                        Optional<UserPrincipal> principalOptional = userPrincipalCache.get(username);
                         
-                        if (userOptional.isPresent()) {
-                            User user = userOptional.get();
-                            String role = user.getRole();
+                        if (principalOptional.isPresent()) {
+                            UserPrincipal principal = principalOptional.get();
+                            String role = principal.getRole();
                             
                             // check if role is valid
-                            if (role == null || role.isEmpty() || !role.equals(jwtUtil.extractRole(token))) {
+                            if (role == null || role.isEmpty() || !role.equals(claims.getRole())) {
                                 log.warn("JWT Debug - Role is null or empty: {}", username);
                                 handleJwtException(response, "Role is null or empty or does not match", HttpStatus.FORBIDDEN);
                                 return;
                             }
 
                             // Check if user is active
-                            if (user.getActive() == null || !user.getActive()) {
+                            if (!principal.isActive()) {
                                 log.warn("JWT Debug - User is inactive: {}", username);
                                 handleJwtException(response, "User account is inactive", HttpStatus.FORBIDDEN);
                                 return;
                             }
                             
-                            log.info("JWT Debug - Username: {}, Role from DB: {}", username, role);
+                            log.info("JWT Debug - Username: {}, Role: {}", username, role);
                             
                             // Create authorities from role (ensure uppercase)
                             List<SimpleGrantedAuthority> authorities = Collections.singletonList(
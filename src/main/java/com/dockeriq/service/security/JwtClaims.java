@@ -0,0 +1,20 @@
+package com.dockeriq.service.security;
+
+import java.util.Date;
+
+import lombok.Value;
+
+/**
+ * Claims of a JWT whose signature and expiry have already been verified.
+ */
+@Value
+public class JwtClaims {
+
+    String subject;
+    String role;
+    Date expiration;
+
+    public boolean isExpired() {
+        return expiration != null && expiration.before(new Date());
+    }
+}
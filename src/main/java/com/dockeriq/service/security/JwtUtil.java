@@ -1,11 +1,24 @@
 package com.dockeriq.service.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 
 import javax.crypto.SecretKey;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -13,6 +26,21 @@ public class JwtUtil {
 
     private final SecretKey key = Keys.hmacShaKeyFor("your-secret-key-here-make-it-long-and-secure".getBytes());
 
+    // JwtParser is immutable and thread-safe, so one instance serves every request
+    private final JwtParser parser = Jwts.parser()
+            .verifyWith(key)
+            .build();
+
+    // Verified tokens keyed by SHA-256 digest of the compact token, dropped when the token expires
+    private final Cache<String, JwtClaims> verifiedTokens;
+
+    public JwtUtil(@Value("${jwt.cache.max-size:10000}") long cacheMaxSize) {
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new TokenExpiry())
+                .build();
+    }
+
     // Generate Token
     public String generateToken(String username, String role) {
         return Jwts.builder()
@@ -23,59 +51,91 @@ public class JwtUtil {
                 .signWith(key)
                 .compact();
     }
-    
+
     // Generate Token (backward compatibility)
     public String generateToken(String username) {
         return generateToken(username, "WORKER"); // Default role
     }
 
+    /**
+     * Verify the token signature and expiry once and return its claims.
+     * Tokens seen before are answered from the cache without re-checking the signature.
+     * @param token compact JWT
+     * @return verified claims
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, badly signed or expired
+     */
+    public JwtClaims verifyToken(String token) {
+        String digest = digest(token);
+        JwtClaims cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+        JwtClaims verified = new JwtClaims(claims.getSubject(), claims.get("role", String.class),
+                claims.getExpiration());
+        verifiedTokens.put(digest, verified);
+        return verified;
+    }
+
     // Extract Username
     public String extractUsername(String token) {
-        return Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+        return verifyToken(token).getSubject();
     }
-    
+
     // Extract Role
     public String extractRole(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        return claims.get("role", String.class);
+        return verifyToken(token).getRole();
     }
-    
+
     // Extract All Claims
     public Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
     }
 
     // Validate Token with username
     public boolean validateToken(String token, String username) {
-        return username.equals(extractUsername(token)) && !isTokenExpired(token);
+        JwtClaims claims = verifyToken(token);
+        return username.equals(claims.getSubject()) && !claims.isExpired();
     }
 
     // Validate Token
     public boolean validateToken(String token) {
-        return !isTokenExpired(token);
+        return !verifyToken(token).isExpired();
     }
 
-    private boolean isTokenExpired(String token) {
-        Date expiration = Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getExpiration();
-        return expiration.before(new Date());
+    private static String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha256.digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
-}
 
+    /**
+     * Expires each cache entry at the token's own expiration time.
+     */
+    private static final class TokenExpiry implements Expiry<String, JwtClaims> {
+
+        @Override
+        public long expireAfterCreate(String key, JwtClaims value, long currentTime) {
+            if (value.getExpiration() == null) {
+                return Long.MAX_VALUE;
+            }
+            long remainingMillis = value.getExpiration().getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, JwtClaims value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, JwtClaims value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.dockeriq.service.security;
+
+import com.dockeriq.service.utils.RestartingChangeStream;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.time.Duration;
+
+/**
+ * Watches the users collection so principals cached on this node are dropped
+ * when another node updates or deletes a user. After an error the stream is restarted
+ * by {@link RestartingChangeStream} and all cached principals are dropped.
+ */
+@Slf4j
+@Component
+public class UserChangeStreamListener {
+
+    private final UserPrincipalCache userPrincipalCache;
+
+    private final boolean enabled;
+
+    private final RestartingChangeStream changeStream;
+
+    public UserChangeStreamListener(MessageListenerContainer messageListenerContainer,
+                                    UserPrincipalCache userPrincipalCache,
+                                    @Value("${dockeriq.cache.principals.change-stream:true}") boolean enabled,
+                                    @Value("${dockeriq.cache.principals.change-stream-restart-backoff:1s}") Duration restartBackoff,
+                                    @Value("${dockeriq.cache.principals.change-stream-max-restart-backoff:1m}") Duration maxRestartBackoff) {
+        this.userPrincipalCache = userPrincipalCache;
+        this.enabled = enabled;
+        this.changeStream = new RestartingChangeStream(messageListenerContainer, "users", request -> { },
+                this::onEvent, this::onError, restartBackoff, maxRestartBackoff);
+    }
+
+    @PostConstruct
+    public void register() {
+        if (!enabled) {
+            log.info("User change stream disabled; cached principals rely on TTL expiry");
+            return;
+        }
+        changeStream.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        changeStream.stop();
+    }
+
+    private void onError() {
+        // Changes made until the stream is back may be missed, e.g. a disabled user or a changed role
+        log.info("Dropping cached principals after a users change stream error");
+        userPrincipalCache.invalidateAll();
+    }
+
+    private void onEvent(ChangeStreamDocument<Document> event) {
+        if (event.getDocumentKey() == null) {
+            return;
+        }
+        BsonValue id = event.getDocumentKey().get("_id");
+        if (id == null) {
+            return;
+        }
+        String userId = id.isObjectId() ? id.asObjectId().getValue().toHexString()
+                : id.isString() ? id.asString().getValue() : id.toString();
+        log.debug("User change event {} for ID: {}", event.getOperationType(), userId);
+        userPrincipalCache.invalidateById(userId);
+    }
+}
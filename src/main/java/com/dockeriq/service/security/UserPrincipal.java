@@ -0,0 +1,22 @@
+package com.dockeriq.service.security;
+
+import com.dockeriq.service.model.User;
+
+import lombok.Value;
+
+/**
+ * The parts of a {@link User} the auth filter needs on every request.
+ */
+@Value
+public class UserPrincipal {
+
+    String id;
+    String email;
+    String role;
+    boolean active;
+
+    public static UserPrincipal from(User user) {
+        return new UserPrincipal(user.getId(), user.getEmail(), user.getRole(),
+                Boolean.TRUE.equals(user.getActive()));
+    }
+}
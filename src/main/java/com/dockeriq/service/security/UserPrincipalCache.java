@@ -0,0 +1,83 @@
+package com.dockeriq.service.security;
+
+import com.dockeriq.service.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * In-process cache of user principals so the auth filter does not hit the database on every request.
+ * Entries are invalidated by UserService on local writes and by {@link UserChangeStreamListener}
+ * for writes made on other nodes; the TTL bounds staleness if a change event is missed.
+ */
+@Slf4j
+@Component
+public class UserPrincipalCache {
+
+    private final UserRepository userRepository;
+
+    private final Cache<String, UserPrincipal> principals;
+
+    public UserPrincipalCache(UserRepository userRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${dockeriq.cache.principals.ttl:60s}") Duration ttl,
+                              @Value("${dockeriq.cache.principals.max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.principals = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "userPrincipals");
+    }
+
+    /**
+     * Get the principal for an email, loading it from the database on a miss
+     * @param email user email (JWT subject)
+     * @return principal if the user exists
+     */
+    public Optional<UserPrincipal> get(String email) {
+        return Optional.ofNullable(principals.get(email, key -> userRepository.findByEmail(key)
+                .map(UserPrincipal::from)
+                .orElse(null)));
+    }
+
+    /**
+     * Drop the cached principal for an email
+     * @param email user email
+     */
+    public void invalidate(String email) {
+        if (email != null) {
+            log.debug("Invalidating cached principal for email: {}", email);
+            principals.invalidate(email);
+        }
+    }
+
+    /**
+     * Drop any cached principal belonging to a user ID (change events for deletes only carry the ID)
+     * @param userId user document ID
+     */
+    public void invalidateById(String userId) {
+        if (userId != null) {
+            log.debug("Invalidating cached principal for user ID: {}", userId);
+            principals.asMap().values().removeIf(principal -> userId.equals(principal.getId()));
+        }
+    }
+
+    /**
+     * Drop all cached principals, e.g. when changes made on other nodes may have been missed
+     */
+    public void invalidateAll() {
+        log.debug("Invalidating all cached principals");
+        principals.invalidateAll();
+    }
+}
@@ -25,7 +25,8 @@ public class AuthService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
-    private final JwtUtil jwtUtil = new JwtUtil();
+    @Autowired
+    private JwtUtil jwtUtil;
 
     public AuthResponse authenticate(AuthRequest authRequest) {
         log.info("Authentication attempt for user: {}", authRequest.getEmail());
@@ -0,0 +1,164 @@
+package com.dockeriq.service.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads a GridFS file straight from its chunks collection using the file document the caller
+ * already has, so no second files-collection lookup is made. {@link #skip(long)} does not read
+ * the skipped bytes: it moves the position and the next read starts the chunk query at
+ * {@code position / chunkSize}, so ranged reads only fetch the chunks they need.
+ */
+public class GridFSChunkInputStream extends InputStream {
+
+    private final MongoCollection<Document> chunksCollection;
+
+    private final GridFSFile file;
+
+    private final long length;
+
+    private final int chunkSize;
+
+    private long position;
+
+    private MongoCursor<Document> cursor;
+
+    private int expectedChunk;
+
+    private byte[] chunk;
+
+    private int chunkOffset;
+
+    private boolean closed;
+
+    public GridFSChunkInputStream(MongoCollection<Document> chunksCollection, GridFSFile file) {
+        this.chunksCollection = chunksCollection;
+        this.file = file;
+        this.length = file.getLength();
+        this.chunkSize = file.getChunkSize();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureChunk()) {
+            return -1;
+        }
+        position++;
+        return chunk[chunkOffset++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, chunk.length - chunkOffset);
+        System.arraycopy(chunk, chunkOffset, buffer, offset, count);
+        chunkOffset += count;
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkClosed();
+        long skipped = Math.max(0, Math.min(n, length - position));
+        if (skipped == 0) {
+            return 0;
+        }
+        if (chunk != null && skipped < chunk.length - chunkOffset) {
+            chunkOffset += (int) skipped;
+        } else {
+            // Drop the current cursor; the next read seeks directly to the target chunk
+            closeCursor();
+        }
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return chunk != null ? chunk.length - chunkOffset : 0;
+    }
+
+    /**
+     * Write the remaining content chunk by chunk, straight from the decoded chunk arrays
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long transferred = 0;
+        while (ensureChunk()) {
+            int count = chunk.length - chunkOffset;
+            out.write(chunk, chunkOffset, count);
+            chunkOffset += count;
+            position += count;
+            transferred += count;
+        }
+        return transferred;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeCursor();
+    }
+
+    private boolean ensureChunk() throws IOException {
+        checkClosed();
+        if (position >= length) {
+            return false;
+        }
+        if (chunk != null && chunkOffset < chunk.length) {
+            return true;
+        }
+        if (cursor == null) {
+            expectedChunk = (int) (position / chunkSize);
+            cursor = chunksCollection
+                .find(Filters.and(Filters.eq("files_id", file.getId()), Filters.gte("n", expectedChunk)))
+                .sort(Sorts.ascending("n"))
+                .iterator();
+            chunkOffset = (int) (position % chunkSize);
+        } else {
+            chunkOffset = 0;
+        }
+        if (!cursor.hasNext()) {
+            throw new IOException("Missing chunk " + expectedChunk + " of GridFS file " + file.getObjectId());
+        }
+        Document document = cursor.next();
+        int n = document.getInteger("n");
+        if (n != expectedChunk) {
+            throw new IOException("Unexpected chunk " + n + " (expected " + expectedChunk + ") of GridFS file " + file.getObjectId());
+        }
+        chunk = document.get("data", Binary.class).getData();
+        expectedChunk++;
+        return chunkOffset < chunk.length;
+    }
+
+    private void closeCursor() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+        chunk = null;
+        chunkOffset = 0;
+    }
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.dockeriq.service.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import org.bson.Document;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+
+/**
+ * Re-readable resource over a GridFS file. Each {@link #getInputStream()} opens a fresh chunk
+ * stream, so Spring MVC can serve single and multi-part byte ranges from it.
+ */
+public class GridFSImageResource extends AbstractResource {
+
+    private final GridFSFile file;
+
+    private final MongoCollection<Document> chunksCollection;
+
+    public GridFSImageResource(GridFSFile file, MongoCollection<Document> chunksCollection) {
+        this.file = file;
+        this.chunksCollection = chunksCollection;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new GridFSChunkInputStream(chunksCollection, file);
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return file.getLength();
+    }
+
+    @Override
+    public long lastModified() {
+        return file.getUploadDate().getTime();
+    }
+
+    @Override
+    public String getFilename() {
+        return file.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return "GridFS file [" + file.getObjectId().toHexString() + "]";
+    }
+
+    public GridFSFile getGridFSFile() {
+        return file;
+    }
+}
@@ -1,35 +1,114 @@
 package com.dockeriq.service.service;
 
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.gridfs.GridFSBucket;
-import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.GridFSUploadStream;
 import com.mongodb.client.gridfs.model.GridFSFile;
 import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+
+import com.dockeriq.service.dto.StoredImage;
+import com.dockeriq.service.model.ImageDescriptor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.dockeriq.service.utils.BufferPool;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
 
 @Slf4j
 @Service
 public class GridFSService {
     
+    private static final int CHUNK_SIZE_BYTES = 1024 * 1024; // 1MB chunks
+    
+    // Copy buffers shared by all uploads so per-upload heap stays constant
+    private final BufferPool bufferPool = new BufferPool(64 * 1024, 32);
+    
     @Autowired
     private GridFsTemplate gridFsTemplate;
     
     @Autowired
     private GridFSBucket gridFSBucket;
     
+    @Autowired
+    @Qualifier("gridFSFilesCollection")
+    private MongoCollection<Document> gridFSFilesCollection;
+    
+    @Autowired
+    @Qualifier("gridFSChunksCollection")
+    private MongoCollection<Document> gridFSChunksCollection;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private ImageContentCache imageContentCache;
+    
+    @Autowired
+    @Qualifier("imageUploadExecutor")
+    private ExecutorService imageUploadExecutor;
+    
+    private final int uploadsPerRequest;
+    
+    private final Semaphore nodeUploadPermits;
+    
+    // File documents never change apart from the reference count, so they are cached until deleted here or,
+    // through the files change stream, on another node; the TTL bounds staleness if that stream is down
+    private final Cache<ObjectId, GridFSFile> fileInfoCache;
+    
+    public GridFSService(@Value("${dockeriq.images.upload.per-request:4}") int uploadsPerRequest,
+                         @Value("${dockeriq.images.upload.max-concurrent:16}") int maxConcurrentUploads,
+                         @Value("${dockeriq.images.metadata-cache.max-size:50000}") long metadataCacheSize,
+                         @Value("${dockeriq.images.metadata-cache.ttl:10m}") Duration metadataCacheTtl,
+                         MeterRegistry meterRegistry) {
+        this.uploadsPerRequest = Math.max(uploadsPerRequest, 1);
+        this.nodeUploadPermits = new Semaphore(Math.max(maxConcurrentUploads, 1));
+        this.fileInfoCache = Caffeine.newBuilder()
+            .maximumSize(metadataCacheSize)
+            .expireAfterWrite(metadataCacheTtl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, fileInfoCache, "imageMetadata");
+    }
+    
     /**
      * Store an image in GridFS
      * @param imageData byte array of the image
@@ -38,24 +117,126 @@ public class GridFSService {
      * @return GridFS file ID
      */
     public String storeImage(byte[] imageData, String filename, String contentType) {
-        log.debug("Storing image in GridFS. Filename: {}, Content-Type: {}, Size: {} bytes", 
-                filename, contentType, imageData.length);
+        return storeImage(new ByteArrayInputStream(imageData), filename, contentType).getId();
+    }
+    
+    /**
+     * Stream an image into GridFS, computing its size, CRC32 and SHA-256 on the fly.
+     * Only one pooled copy buffer and the driver's current chunk are held in memory,
+     * regardless of the image size. If a file with the same SHA-256 already exists, the new
+     * copy is dropped and the existing file's reference count is incremented instead, unless
+     * another upload already references the new copy.
+     * @param inputStream image content, read to the end but not closed
+     * @param filename name of the file
+     * @param contentType MIME type of the image
+     * @return stored image details; the ID is the existing file's ID for duplicates
+     */
+    public StoredImage storeImage(InputStream inputStream, String filename, String contentType) {
+        log.debug("Streaming image into GridFS. Filename: {}, Content-Type: {}", filename, contentType);
+        Document metadata = new Document("contentType", contentType)
+            .append("uploadedAt", System.currentTimeMillis())
+            .append("refCount", 1);
+        GridFSUploadOptions options = new GridFSUploadOptions()
+            .chunkSizeBytes(CHUNK_SIZE_BYTES)
+            .metadata(metadata);
+        
+        GridFSUploadStream uploadStream = gridFSBucket.openUploadStream(filename, options);
+        byte[] buffer = bufferPool.acquire();
+        CRC32 crc32 = new CRC32();
+        MessageDigest sha256 = newSha256();
+        long size = 0;
         try {
-            InputStream inputStream = new ByteArrayInputStream(imageData);
-            
-            GridFSUploadOptions options = new GridFSUploadOptions()
-                .chunkSizeBytes(1024 * 1024) // 1MB chunks
-                .metadata(new Document("contentType", contentType)
-                    .append("uploadedAt", System.currentTimeMillis()));
-            
-            ObjectId objectId = gridFSBucket.uploadFromStream(filename, inputStream, options);
-            String imageId = objectId.toHexString();
-            log.info("Successfully stored image in GridFS. Filename: {}, Image ID: {}", filename, imageId);
-            return imageId;
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                uploadStream.write(buffer, 0, bytesRead);
+                crc32.update(buffer, 0, bytesRead);
+                sha256.update(buffer, 0, bytesRead);
+                size += bytesRead;
+            }
+            // The files document is built from this metadata instance when the stream is closed
+            metadata.append("crc32", crc32.getValue());
+            metadata.append("sha256", HexFormat.of().formatHex(sha256.digest()));
+            uploadStream.close();
         } catch (Exception e) {
             log.error("Failed to store image in GridFS. Filename: {}. Error: {}", filename, e.getMessage(), e);
+            abortQuietly(uploadStream);
             throw new RuntimeException("Failed to store image: " + filename, e);
+        } finally {
+            bufferPool.release(buffer);
+        }
+        
+        ObjectId newId = uploadStream.getObjectId();
+        StoredImage storedImage = new StoredImage();
+        storedImage.setFilename(filename);
+        storedImage.setContentType(contentType);
+        storedImage.setSize(size);
+        storedImage.setCrc32(crc32.getValue());
+        storedImage.setSha256(metadata.getString("sha256"));
+        
+        GridFSFile duplicate = referenceExistingCopy(storedImage.getSha256(), newId);
+        if (duplicate != null) {
+            if (dropUnreferencedCopy(newId)) {
+                storedImage.setId(duplicate.getObjectId().toHexString());
+                storedImage.setUploadDate(duplicate.getUploadDate());
+                log.info("Image {} duplicates existing image {}; reusing it", filename, storedImage.getId());
+                return storedImage;
+            }
+            // A newer identical upload already references this copy, so it stays and the older one is released
+            log.info("Image {} duplicates existing image {} but is already shared; keeping both",
+                    filename, duplicate.getObjectId().toHexString());
+            releaseImage(duplicate.getObjectId().toHexString());
         }
+        
+        storedImage.setId(newId.toHexString());
+        // Report the date GridFS recorded; loading it also primes the metadata cache
+        GridFSFile stored = getImageInfo(storedImage.getId());
+        storedImage.setUploadDate(stored != null ? stored.getUploadDate() : new Date());
+        log.info("Successfully stored image in GridFS. Filename: {}, Image ID: {}, Size: {} bytes", 
+                filename, storedImage.getId(), size);
+        return storedImage;
+    }
+    
+    /**
+     * Atomically add a reference to the oldest live file with the same content, if it is older than
+     * the new one. Only the newer of two concurrent identical uploads defers to the other, so they
+     * never both drop their own copy in favour of each other; a copy that a newer upload already
+     * references is never dropped either. Files whose count already dropped to zero are being
+     * deleted and are not matched.
+     */
+    private GridFSFile referenceExistingCopy(String sha256, ObjectId newId) {
+        Document existing = gridFSFilesCollection.findOneAndUpdate(
+            Filters.and(
+                Filters.eq("metadata.sha256", sha256),
+                Filters.lt("_id", newId),
+                Filters.gt("metadata.refCount", 0)),
+            Updates.inc("metadata.refCount", 1),
+            new FindOneAndUpdateOptions()
+                .sort(Sorts.ascending("_id"))
+                .projection(Projections.include("_id")));
+        if (existing == null) {
+            return null;
+        }
+        return getImageInfo(existing.getObjectId("_id").toHexString());
+    }
+    
+    /**
+     * Delete a new upload that turned out to duplicate an older file, but only while nothing else
+     * references it. Zeroing the count first keeps later uploads from referencing the copy being
+     * deleted; if another upload referenced it in the meantime, it is kept.
+     * @return true if the copy was deleted
+     */
+    private boolean dropUnreferencedCopy(ObjectId newId) {
+        Document dropped = gridFSFilesCollection.findOneAndUpdate(
+            Filters.and(
+                Filters.eq("_id", newId),
+                Filters.eq("metadata.refCount", 1)),
+            Updates.set("metadata.refCount", 0),
+            new FindOneAndUpdateOptions().projection(Projections.include("_id")));
+        if (dropped == null) {
+            return false;
+        }
+        deleteQuietly(newId);
+        return true;
     }
     
     /**
@@ -80,32 +261,196 @@ public class GridFSService {
     }
     
     /**
-     * Retrieve an image from GridFS
-     * @param imageId GridFS file ID
-     * @return byte array of the image
+     * Stream multiple uploaded images into GridFS without reading them into memory.
+     * Uploads run concurrently (bounded per request and per node); if any upload fails,
+     * the images already stored for this call are deleted again.
+     * @param images uploaded multipart files
+     * @return stored image details in upload order
      */
-    public byte[] retrieveImage(String imageId) {
-        log.debug("Retrieving image from GridFS. Image ID: {}", imageId);
+    public List<StoredImage> storeMultipleImages(List<MultipartFile> images) {
+        log.info("Streaming {} images into GridFS", images.size());
+        List<StoredImage> storedImages = images.size() > 1 && uploadsPerRequest > 1
+            ? storeConcurrently(images)
+            : storeSequentially(images);
+        log.info("Successfully stored {} images in GridFS", images.size());
+        return storedImages;
+    }
+    
+    private List<StoredImage> storeSequentially(List<MultipartFile> images) {
+        List<StoredImage> storedImages = new ArrayList<>();
         try {
-            GridFSDownloadStream downloadStream = gridFSBucket.openDownloadStream(new ObjectId(imageId));
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            int totalBytes = 0;
-            while ((bytesRead = downloadStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-                totalBytes += bytesRead;
+            for (int i = 0; i < images.size(); i++) {
+                MultipartFile image = images.get(i);
+                log.debug("Storing image {}/{}: {}", i + 1, images.size(), image.getOriginalFilename());
+                storedImages.add(storeMultipartImage(image));
             }
-            
-            downloadStream.close();
-            byte[] imageData = outputStream.toByteArray();
-            log.info("Successfully retrieved image from GridFS. Image ID: {}, Size: {} bytes", 
-                    imageId, totalBytes);
-            return imageData;
+        } catch (RuntimeException e) {
+            rollback(storedImages);
+            throw e;
+        }
+        return storedImages;
+    }
+    
+    private List<StoredImage> storeConcurrently(List<MultipartFile> images) {
+        Semaphore requestPermits = new Semaphore(uploadsPerRequest);
+        List<Future<StoredImage>> uploads = new ArrayList<>(images.size());
+        Throwable failure = null;
+        
+        try {
+            for (MultipartFile image : images) {
+                requestPermits.acquire();
+                uploads.add(imageUploadExecutor.submit(() -> {
+                    try {
+                        nodeUploadPermits.acquire();
+                        try {
+                            log.debug("Storing image: {}", image.getOriginalFilename());
+                            return storeMultipartImage(image);
+                        } finally {
+                            nodeUploadPermits.release();
+                        }
+                    } finally {
+                        requestPermits.release();
+                    }
+                }));
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            failure = e;
+        }
+        
+        // Wait for every submitted upload, in submission order, so the result keeps the
+        // original image order and a rollback sees every file that was stored
+        List<StoredImage> storedImages = new ArrayList<>(uploads.size());
+        boolean interrupted = failure instanceof InterruptedException;
+        for (Future<StoredImage> upload : uploads) {
+            while (true) {
+                try {
+                    storedImages.add(upload.get());
+                    break;
+                } catch (ExecutionException e) {
+                    failure = failure != null ? failure : e.getCause();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        
+        if (failure != null || storedImages.size() < images.size()) {
+            rollback(storedImages);
+            if (failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Failed to store images", failure);
+        }
+        return storedImages;
+    }
+    
+    private void rollback(List<StoredImage> storedImages) {
+        if (storedImages.isEmpty()) {
+            return;
+        }
+        log.warn("Rolling back {} images stored before the failure", storedImages.size());
+        for (StoredImage storedImage : storedImages) {
+            try {
+                releaseImage(storedImage.getId());
+            } catch (Exception e) {
+                log.warn("Failed to roll back image with ID: {}. Error: {}", storedImage.getId(), e.getMessage());
+            }
+        }
+    }
+    
+    private StoredImage storeMultipartImage(MultipartFile image) {
+        try (InputStream inputStream = image.getInputStream()) {
+            return storeImage(inputStream, image.getOriginalFilename(), image.getContentType());
+        } catch (IOException e) {
+            log.error("Failed to read image: {}. Error: {}", image.getOriginalFilename(), e.getMessage());
+            throw new RuntimeException("Failed to read image: " + image.getOriginalFilename(), e);
+        }
+    }
+    
+    private void deleteQuietly(ObjectId objectId) {
+        try {
+            gridFSBucket.delete(objectId);
+            fileInfoCache.invalidate(objectId);
         } catch (Exception e) {
-            log.error("Failed to retrieve image from GridFS. Image ID: {}. Error: {}", imageId, e.getMessage(), e);
-            throw new RuntimeException("Failed to retrieve image: " + imageId, e);
+            log.warn("Failed to delete duplicate upload {}. Error: {}", objectId, e.getMessage());
+        }
+    }
+    
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    private void abortQuietly(GridFSUploadStream uploadStream) {
+        try {
+            uploadStream.abort();
+        } catch (Exception e) {
+            log.debug("Failed to abort GridFS upload {}. Error: {}", uploadStream.getObjectId(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Write an image to an output stream without materializing it per request. Cached images are
+     * written from the image cache; uncached images that fit the cache are read once into an
+     * exactly sized array that becomes the cache entry; larger images are written chunk by chunk
+     * straight from the decoded GridFS chunks.
+     * @param fileInfo GridFS file information
+     * @param outputStream destination, not closed
+     * @throws IOException if reading from GridFS or writing fails
+     */
+    public void writeImage(GridFSFile fileInfo, OutputStream outputStream) throws IOException {
+        String imageId = fileInfo.getObjectId().toHexString();
+        if (imageContentCache.writeTo(imageId, outputStream)) {
+            log.debug("Served image from cache. Image ID: {}", imageId);
+            return;
+        }
+        
+        try (GridFSChunkInputStream inputStream = new GridFSChunkInputStream(gridFSChunksCollection, fileInfo)) {
+            if (imageContentCache.accepts(fileInfo.getLength())) {
+                byte[] imageData = new byte[(int) fileInfo.getLength()];
+                if (inputStream.readNBytes(imageData, 0, imageData.length) != imageData.length) {
+                    throw new IOException("GridFS file " + imageId + " is shorter than its recorded length");
+                }
+                imageContentCache.put(imageId, imageData);
+                outputStream.write(imageData);
+            } else {
+                inputStream.transferTo(outputStream);
+            }
+        }
+        log.info("Successfully served image from GridFS. Image ID: {}, Size: {} bytes", imageId, fileInfo.getLength());
+    }
+    
+    /**
+     * Drop one reference to an image and delete it from GridFS when the last reference goes away.
+     * Files stored before reference counting was introduced count as a single reference.
+     * @param imageId GridFS file ID
+     */
+    public void releaseImage(String imageId) {
+        log.debug("Releasing image reference. Image ID: {}", imageId);
+        ObjectId objectId = new ObjectId(imageId);
+        Document released = gridFSFilesCollection.findOneAndUpdate(
+            Filters.eq("_id", objectId),
+            Updates.inc("metadata.refCount", -1),
+            new FindOneAndUpdateOptions()
+                .projection(Projections.include("metadata.refCount"))
+                .returnDocument(ReturnDocument.AFTER));
+        if (released == null) {
+            log.debug("Image not found while releasing. Image ID: {}", imageId);
+            return;
+        }
+        Document metadata = released.get("metadata", Document.class);
+        Number refCount = metadata != null ? metadata.get("refCount", Number.class) : null;
+        if (refCount == null || refCount.intValue() <= 0) {
+            deleteImage(imageId);
+        } else {
+            log.info("Image still referenced {} times; keeping it. Image ID: {}", refCount, imageId);
         }
     }
     
@@ -116,8 +461,12 @@ public class GridFSService {
     public void deleteImage(String imageId) {
         log.debug("Deleting image from GridFS. Image ID: {}", imageId);
         try {
-            gridFSBucket.delete(new ObjectId(imageId));
+            ObjectId objectId = new ObjectId(imageId);
+            gridFSBucket.delete(objectId);
+            fileInfoCache.invalidate(objectId);
+            eventPublisher.publishEvent(new ImageDeletedEvent(imageId));
             log.info("Successfully deleted image from GridFS. Image ID: {}", imageId);
+            deleteVariants(imageId);
         } catch (Exception e) {
             log.error("Failed to delete image from GridFS. Image ID: {}. Error: {}", imageId, e.getMessage(), e);
             throw new RuntimeException("Failed to delete image: " + imageId, e);
@@ -125,13 +474,123 @@ public class GridFSService {
     }
     
     /**
-     * Get image metadata
+     * Store a generated variant (e.g. a thumbnail) of an image, linked to the original through its metadata
+     * @param originalId GridFS ID of the original image
+     * @param width variant width in pixels
+     * @param data encoded variant
+     * @param filename name of the file
+     * @param contentType MIME type of the variant
+     * @return GridFS ID of the variant
+     */
+    public String storeImageVariant(String originalId, int width, byte[] data, String filename, String contentType) {
+        GridFSUploadOptions options = new GridFSUploadOptions()
+            .chunkSizeBytes(CHUNK_SIZE_BYTES)
+            .metadata(new Document("contentType", contentType)
+                .append("uploadedAt", System.currentTimeMillis())
+                .append("variantOf", originalId)
+                .append("width", width));
+        ObjectId objectId = gridFSBucket.uploadFromStream(filename, new ByteArrayInputStream(data), options);
+        log.info("Stored {}px variant of image {}. Variant ID: {}, Size: {} bytes", width, originalId, objectId.toHexString(), data.length);
+        return objectId.toHexString();
+    }
+    
+    /**
+     * Find a stored variant of an image
+     * @param originalId GridFS ID of the original image
+     * @param width variant width in pixels
+     * @return variant file, or null if it has not been generated yet
+     */
+    public GridFSFile findImageVariant(String originalId, int width) {
+        return gridFSBucket.find(Filters.and(
+                Filters.eq("metadata.variantOf", originalId),
+                Filters.eq("metadata.width", width)))
+            .first();
+    }
+    
+    /**
+     * Find the stored variants of several images with a single query
+     * @param originalIds GridFS IDs of the original images
+     * @return variant IDs by width, keyed by original image ID; images without variants are absent
+     */
+    public Map<String, Map<String, String>> findVariantIds(Collection<String> originalIds) {
+        Map<String, Map<String, String>> variantIds = new HashMap<>();
+        if (originalIds.isEmpty()) {
+            return variantIds;
+        }
+        gridFSBucket.find(Filters.in("metadata.variantOf", originalIds)).forEach(variant -> {
+            Document metadata = variant.getMetadata();
+            Number width = metadata.get("width", Number.class);
+            if (width != null) {
+                variantIds.computeIfAbsent(metadata.getString("variantOf"), key -> new HashMap<>())
+                    .put(String.valueOf(width.intValue()), variant.getObjectId().toHexString());
+            }
+        });
+        return variantIds;
+    }
+    
+    /**
+     * Build the descriptor embedded in shipments from a GridFS file
+     * @param fileInfo GridFS file information
+     * @return image descriptor without variants
+     */
+    public ImageDescriptor describeImage(GridFSFile fileInfo) {
+        ImageDescriptor descriptor = new ImageDescriptor();
+        descriptor.setId(fileInfo.getObjectId().toHexString());
+        descriptor.setFilename(fileInfo.getFilename());
+        descriptor.setSize(fileInfo.getLength());
+        descriptor.setUploadDate(fileInfo.getUploadDate());
+        Document metadata = fileInfo.getMetadata();
+        String contentType = metadata != null ? metadata.getString("contentType") : null;
+        descriptor.setContentType(contentType != null ? contentType : "image/jpeg");
+        Number crc32 = metadata != null ? metadata.get("crc32", Number.class) : null;
+        descriptor.setCrc32(crc32 != null ? crc32.longValue() : null);
+        return descriptor;
+    }
+    
+    /**
+     * Drop a deleted image from this node's caches
+     * @param imageId GridFS file ID
+     */
+    public void evictDeletedImage(String imageId) {
+        fileInfoCache.invalidate(new ObjectId(imageId));
+        eventPublisher.publishEvent(new ImageDeletedEvent(imageId));
+    }
+    
+    /**
+     * Drop all cached file documents, when deletions on other nodes may have been missed
+     */
+    public void evictAllImageInfo() {
+        fileInfoCache.invalidateAll();
+    }
+    
+    private void deleteVariants(String originalId) {
+        List<ObjectId> variantIds = new ArrayList<>();
+        gridFSBucket.find(Filters.eq("metadata.variantOf", originalId))
+            .forEach(variant -> variantIds.add(variant.getObjectId()));
+        for (ObjectId variantId : variantIds) {
+            try {
+                gridFSBucket.delete(variantId);
+                fileInfoCache.invalidate(variantId);
+                eventPublisher.publishEvent(new ImageDeletedEvent(variantId.toHexString()));
+                log.debug("Deleted variant {} of image {}", variantId, originalId);
+            } catch (Exception e) {
+                log.warn("Failed to delete variant {} of image {}. Error: {}", variantId, originalId, e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Get image metadata. File documents are cached per node, so each image is looked up at most
+     * once until it is evicted or deleted; missing images are not cached.
      * @param imageId GridFS file ID
      * @return GridFS file information
      */
     public GridFSFile getImageInfo(String imageId) {
-        log.debug("Retrieving image metadata from GridFS. Image ID: {}", imageId);
-        GridFSFile fileInfo = gridFSBucket.find(new Document("_id", new ObjectId(imageId))).first();
+        log.debug("Retrieving image metadata. Image ID: {}", imageId);
+        GridFSFile fileInfo = fileInfoCache.get(new ObjectId(imageId), objectId -> {
+            log.debug("Loading image metadata from GridFS. Image ID: {}", imageId);
+            return gridFSBucket.find(Filters.eq("_id", objectId)).first();
+        });
         if (fileInfo != null) {
             log.debug("Image metadata found. Image ID: {}, Filename: {}, Size: {} bytes", 
                     imageId, fileInfo.getFilename(), fileInfo.getLength());
@@ -141,6 +600,28 @@ public class GridFSService {
         return fileInfo;
     }
     
+    /**
+     * Get metadata of several images, loading all cache misses with a single query
+     * @param imageIds GridFS file IDs
+     * @return file information by image ID; missing images are absent
+     */
+    public Map<String, GridFSFile> getImageInfos(List<String> imageIds) {
+        List<ObjectId> objectIds = new ArrayList<>(imageIds.size());
+        for (String imageId : imageIds) {
+            objectIds.add(new ObjectId(imageId));
+        }
+        Map<ObjectId, GridFSFile> found = fileInfoCache.getAll(objectIds, missing -> {
+            log.debug("Loading metadata of {} images from GridFS", missing.size());
+            Map<ObjectId, GridFSFile> loaded = new HashMap<>();
+            gridFSBucket.find(Filters.in("_id", missing))
+                .forEach(fileInfo -> loaded.put(fileInfo.getObjectId(), fileInfo));
+            return loaded;
+        });
+        Map<String, GridFSFile> fileInfos = new HashMap<>();
+        found.forEach((objectId, fileInfo) -> fileInfos.put(objectId.toHexString(), fileInfo));
+        return fileInfos;
+    }
+    
     /**
      * Stream image data directly to output stream (for better performance)
      * @param imageId GridFS file ID
@@ -148,14 +629,32 @@ public class GridFSService {
      */
     public InputStream streamImage(String imageId) {
         log.debug("Streaming image from GridFS. Image ID: {}", imageId);
-        try {
-            GridFSDownloadStream downloadStream = gridFSBucket.openDownloadStream(new ObjectId(imageId));
-            log.debug("Successfully opened download stream for image ID: {}", imageId);
-            return downloadStream;
-        } catch (Exception e) {
-            log.error("Failed to stream image from GridFS. Image ID: {}. Error: {}", imageId, e.getMessage(), e);
-            throw new RuntimeException("Failed to stream image: " + imageId, e);
+        GridFSFile fileInfo = getImageInfo(imageId);
+        if (fileInfo == null) {
+            log.error("Failed to stream image from GridFS. Image not found. Image ID: {}", imageId);
+            throw new RuntimeException("Failed to stream image: " + imageId);
         }
+        log.debug("Successfully opened stream for image ID: {}", imageId);
+        return new GridFSChunkInputStream(gridFSChunksCollection, fileInfo);
+    }
+    
+    /**
+     * Stream image data using the file document the caller already loaded
+     * @param fileInfo GridFS file information
+     * @return InputStream over the image chunks
+     */
+    public InputStream streamImage(GridFSFile fileInfo) {
+        return new GridFSChunkInputStream(gridFSChunksCollection, fileInfo);
+    }
+    
+    /**
+     * Get a re-readable resource over an image, reusing the file document the caller already loaded.
+     * Reads go straight to the chunks collection and skips seek by chunk, so byte ranges are cheap.
+     * @param fileInfo GridFS file information
+     * @return resource streaming the image content
+     */
+    public GridFSImageResource getImageResource(GridFSFile fileInfo) {
+        return new GridFSImageResource(fileInfo, gridFSChunksCollection);
     }
     
     /**
@@ -166,7 +665,7 @@ public class GridFSService {
     public Map<String, Object> getEnhancedImageInfo(String imageId) {
         log.debug("Retrieving enhanced image metadata from GridFS. Image ID: {}", imageId);
         try {
-            GridFSFile fileInfo = gridFSBucket.find(new Document("_id", new ObjectId(imageId))).first();
+            GridFSFile fileInfo = getImageInfo(imageId);
             if (fileInfo == null) {
                 log.debug("Image metadata not found. Image ID: {}", imageId);
                 return null;
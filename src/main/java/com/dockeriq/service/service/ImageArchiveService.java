@@ -0,0 +1,155 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.model.ImageDescriptor;
+import com.dockeriq.service.model.Shipment;
+import com.dockeriq.service.repository.ShipmentRepository;
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds ZIP archives of shipment images on the fly. Entries are streamed chunk by chunk from
+ * GridFS into the response, so neither an image nor the archive is ever held in memory.
+ * Already-compressed formats are written as STORED entries using the CRC-32 recorded at upload;
+ * other formats, and files uploaded before CRCs were recorded, are deflated.
+ */
+@Slf4j
+@Service
+public class ImageArchiveService {
+
+    // Formats that do not shrink further under deflate
+    private static final Set<String> PRECOMPRESSED_TYPES = Set.of("image/jpeg", "image/jpg", "image/png", "image/gif", "image/webp");
+
+    @Autowired
+    private ShipmentRepository shipmentRepository;
+
+    @Autowired
+    private GridFSService gridFSService;
+
+    /**
+     * Resolve the images to archive for a set of shipments, before anything is written.
+     * Every image's file document is loaded (from the metadata cache where possible) with at most one query.
+     * @param trackingNumbers shipment tracking numbers, in archive order
+     * @return archive entries in order; tracking numbers without a shipment are left out
+     */
+    public List<ArchiveEntry> planArchive(Collection<String> trackingNumbers) {
+        Map<String, Shipment> shipmentsByTrackingNumber = new HashMap<>();
+        for (Shipment shipment : shipmentRepository.findByTrackingNumberIn(trackingNumbers)) {
+            shipmentsByTrackingNumber.put(shipment.getTrackingNumber(), shipment);
+        }
+
+        List<String> imageIds = new ArrayList<>();
+        shipmentsByTrackingNumber.values().forEach(shipment -> {
+            if (shipment.getImageIds() != null) {
+                imageIds.addAll(shipment.getImageIds());
+            }
+        });
+        Map<String, GridFSFile> fileInfos = gridFSService.getImageInfos(imageIds);
+
+        List<ArchiveEntry> entries = new ArrayList<>();
+        Set<String> planned = new HashSet<>();
+        for (String trackingNumber : trackingNumbers) {
+            Shipment shipment = shipmentsByTrackingNumber.get(trackingNumber);
+            if (shipment == null || shipment.getImageIds() == null || !planned.add(trackingNumber)) {
+                continue;
+            }
+            Map<String, ImageDescriptor> descriptors = new HashMap<>();
+            if (shipment.getImages() != null) {
+                shipment.getImages().forEach(descriptor -> descriptors.put(descriptor.getId(), descriptor));
+            }
+            int index = 0;
+            for (String imageId : shipment.getImageIds()) {
+                GridFSFile fileInfo = fileInfos.get(imageId);
+                if (fileInfo == null) {
+                    log.warn("Image {} of shipment {} no longer exists; leaving it out of the archive", imageId, trackingNumber);
+                    continue;
+                }
+                ImageDescriptor descriptor = descriptors.get(imageId);
+                if (descriptor == null) {
+                    descriptor = gridFSService.describeImage(fileInfo);
+                }
+                index++;
+                String filename = descriptor.getFilename() != null ? descriptor.getFilename() : imageId;
+                // Prefix with the position so repeated filenames stay distinct entries
+                String name = trackingNumber + "/" + String.format("%02d", index) + "-" + filename.replace('/', '_');
+                entries.add(new ArchiveEntry(name, fileInfo, descriptor));
+            }
+        }
+        log.debug("Planned archive of {} images for {} tracking numbers", entries.size(), trackingNumbers.size());
+        return entries;
+    }
+
+    /**
+     * Write a ZIP archive of the planned entries. The output stream is finished but not closed.
+     * @param entries planned archive entries
+     * @param outputStream destination
+     * @throws IOException if reading an image or writing the archive fails
+     */
+    public void writeArchive(List<ArchiveEntry> entries, OutputStream outputStream) throws IOException {
+        ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+        for (ArchiveEntry entry : entries) {
+            ZipEntry zipEntry = new ZipEntry(entry.getName());
+            ImageDescriptor descriptor = entry.getDescriptor();
+            if (descriptor.getUploadDate() != null) {
+                zipEntry.setTime(descriptor.getUploadDate().getTime());
+            }
+            // STORED entries need size and CRC up front; both come from the GridFS file itself, recorded
+            // when its bytes were stored, since a mismatch with the streamed content corrupts the archive
+            Long crc32 = storedCrc32(entry.getFileInfo());
+            if (crc32 != null && isPrecompressed(descriptor.getContentType())) {
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(entry.getFileInfo().getLength());
+                zipEntry.setCompressedSize(entry.getFileInfo().getLength());
+                zipEntry.setCrc(crc32);
+            } else {
+                zipEntry.setMethod(ZipEntry.DEFLATED);
+            }
+
+            zipOutputStream.putNextEntry(zipEntry);
+            try (InputStream inputStream = gridFSService.streamImage(entry.getFileInfo())) {
+                inputStream.transferTo(zipOutputStream);
+            }
+            zipOutputStream.closeEntry();
+        }
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+        log.info("Streamed archive of {} images", entries.size());
+    }
+
+    private static Long storedCrc32(GridFSFile fileInfo) {
+        Number crc32 = fileInfo.getMetadata() != null ? fileInfo.getMetadata().get("crc32", Number.class) : null;
+        return crc32 != null ? crc32.longValue() : null;
+    }
+
+    private static boolean isPrecompressed(String contentType) {
+        return contentType != null && PRECOMPRESSED_TYPES.contains(contentType.toLowerCase());
+    }
+
+    /**
+     * One image in an archive, resolved ahead of streaming
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class ArchiveEntry {
+        private final String name;
+        private final GridFSFile fileInfo;
+        private final ImageDescriptor descriptor;
+    }
+}
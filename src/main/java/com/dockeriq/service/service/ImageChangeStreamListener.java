@@ -0,0 +1,84 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.config.MongoConfig;
+import com.dockeriq.service.utils.RestartingChangeStream;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.time.Duration;
+
+/**
+ * Watches deletions in the GridFS files collection, so image metadata and content cached on this
+ * node are dropped when any node deletes the image. Local deletions evict directly; this covers the
+ * others. Like the shipments stream, it is restarted by {@link RestartingChangeStream} after an
+ * error; deletions missed when it cannot resume are left to the cache TTLs.
+ */
+@Slf4j
+@Component
+public class ImageChangeStreamListener {
+
+    // Only deletions matter, and only the deleted file's ID
+    private static final Document MATCH_DELETES = new Document("$match", new Document("operationType", "delete"));
+
+    private static final Document PROJECTION = new Document("$project", new Document("operationType", 1)
+            .append("ns", 1)
+            .append("documentKey", 1));
+
+    private final GridFSService gridFSService;
+
+    private final boolean enabled;
+
+    private final RestartingChangeStream changeStream;
+
+    public ImageChangeStreamListener(MessageListenerContainer messageListenerContainer,
+                                     GridFSService gridFSService,
+                                     @Value("${dockeriq.images.change-stream.enabled:true}") boolean enabled,
+                                     @Value("${dockeriq.images.change-stream.restart-backoff:1s}") Duration restartBackoff,
+                                     @Value("${dockeriq.images.change-stream.max-restart-backoff:1m}") Duration maxRestartBackoff) {
+        this.gridFSService = gridFSService;
+        this.enabled = enabled;
+        this.changeStream = new RestartingChangeStream(messageListenerContainer, MongoConfig.IMAGE_BUCKET + ".files",
+                request -> request.filter(MATCH_DELETES, PROJECTION),
+                this::onEvent, this::onError, restartBackoff, maxRestartBackoff);
+    }
+
+    @PostConstruct
+    public void register() {
+        if (!enabled) {
+            log.info("Image change stream disabled; images deleted on other nodes stay cached until their TTL expires");
+            return;
+        }
+        changeStream.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        changeStream.stop();
+    }
+
+    private void onError() {
+        // Deletions missed meanwhile leave stale metadata; cached content expires by TTL
+        log.info("Dropping cached image metadata after an image change stream error");
+        gridFSService.evictAllImageInfo();
+    }
+
+    private void onEvent(ChangeStreamDocument<Document> event) {
+        BsonValue id = event.getDocumentKey() != null ? event.getDocumentKey().get("_id") : null;
+        if (id == null || !id.isObjectId()) {
+            return;
+        }
+        String imageId = id.asObjectId().getValue().toHexString();
+        log.debug("Image deleted: {}; evicting it from the caches", imageId);
+        gridFSService.evictDeletedImage(imageId);
+    }
+}
@@ -0,0 +1,291 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.utils.BufferPool;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Two-tier cache of image bytes in front of GridFS reads. Small hot images live in a byte-bounded
+ * heap LRU; everything up to the disk entry limit is also written to a local directory and read back
+ * with plain file reads, so repeat reads come from the OS page cache instead of MongoDB. Disk entries
+ * are not memory-mapped: a mapping pins its file's disk space after eviction until the buffer is
+ * garbage collected, which would let the directory outgrow its limit.
+ * Stored images never change, so entries are only dropped on eviction, when the image is deleted on
+ * this node or another one (see {@link ImageChangeStreamListener}), or after the TTL, which bounds how
+ * long a deletion missed by the change stream can go unnoticed.
+ */
+@Slf4j
+@Service
+public class ImageContentCache {
+
+    private final long heapMaxEntryBytes;
+
+    private final long diskMaxEntryBytes;
+
+    private final Path diskDirectory;
+
+    private final Cache<String, byte[]> heapTier;
+
+    // null when the disk tier is disabled or its directory is unusable
+    private final Cache<String, DiskEntry> diskTier;
+
+    private final Counter heapHits;
+
+    private final Counter diskHits;
+
+    private final Counter misses;
+
+    private final LongAdder bytesSaved = new LongAdder();
+
+    // Copy buffers for writing disk entries to responses
+    private final BufferPool bufferPool = new BufferPool(64 * 1024, 32);
+
+    public ImageContentCache(MeterRegistry meterRegistry,
+                             @Value("${dockeriq.images.cache.ttl:1h}") Duration ttl,
+                             @Value("${dockeriq.images.cache.heap.max-size:64MB}") DataSize heapMaxSize,
+                             @Value("${dockeriq.images.cache.heap.max-entry-size:1MB}") DataSize heapMaxEntrySize,
+                             @Value("${dockeriq.images.cache.disk.enabled:true}") boolean diskEnabled,
+                             @Value("${dockeriq.images.cache.disk.max-size:1GB}") DataSize diskMaxSize,
+                             @Value("${dockeriq.images.cache.disk.max-entry-size:10MB}") DataSize diskMaxEntrySize,
+                             @Value("${dockeriq.images.cache.disk.directory:${java.io.tmpdir}/dockeriq-image-cache}") String diskDirectory) {
+        this.heapMaxEntryBytes = heapMaxEntrySize.toBytes();
+        this.diskMaxEntryBytes = Math.min(diskMaxEntrySize.toBytes(), Integer.MAX_VALUE);
+        this.diskDirectory = Path.of(diskDirectory);
+
+        this.heapTier = Caffeine.newBuilder()
+                .maximumWeight(heapMaxSize.toBytes())
+                .weigher((String imageId, byte[] bytes) -> bytes.length)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, heapTier, "imageContent.heap");
+
+        this.diskTier = diskEnabled && prepareDirectory(this.diskDirectory)
+                ? Caffeine.newBuilder()
+                    .maximumWeight(diskMaxSize.toBytes())
+                    .weigher((String imageId, DiskEntry entry) -> entry.size)
+                    .expireAfterWrite(ttl)
+                    .removalListener((String imageId, DiskEntry entry, RemovalCause cause) -> {
+                        if (entry != null) {
+                            entry.delete();
+                        }
+                    })
+                    .recordStats()
+                    .build()
+                : null;
+        if (diskTier != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, diskTier, "imageContent.disk");
+        }
+
+        this.heapHits = Counter.builder("dockeriq.images.cache.requests").tag("result", "heap").register(meterRegistry);
+        this.diskHits = Counter.builder("dockeriq.images.cache.requests").tag("result", "disk").register(meterRegistry);
+        this.misses = Counter.builder("dockeriq.images.cache.requests").tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("dockeriq.images.cache.bytes.saved", bytesSaved, LongAdder::sum)
+                .description("Image bytes served from the cache instead of GridFS")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("dockeriq.images.cache.hit.ratio", this, ImageContentCache::hitRatio)
+                .description("Share of image reads served from either cache tier")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Write a cached image straight to an output stream without allocating a copy: heap entries
+     * are written as they are, disk entries are read through a pooled buffer. A miss is counted and
+     * nothing is written.
+     * @param imageId GridFS file ID
+     * @param outputStream destination
+     * @return true if the image was cached and has been written
+     * @throws IOException if writing fails
+     */
+    public boolean writeTo(String imageId, OutputStream outputStream) throws IOException {
+        byte[] bytes = heapTier.getIfPresent(imageId);
+        if (bytes != null) {
+            outputStream.write(bytes);
+            heapHits.increment();
+            bytesSaved.add(bytes.length);
+            return true;
+        }
+
+        DiskEntry entry = diskTier != null ? diskTier.getIfPresent(imageId) : null;
+        if (entry != null && entry.writeTo(outputStream, bufferPool)) {
+            diskHits.increment();
+            bytesSaved.add(entry.size);
+            return true;
+        }
+
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Whether an image of the given size would be kept by either tier
+     * @param size image size in bytes
+     * @return true if {@link #put(String, byte[])} would cache it
+     */
+    public boolean accepts(long size) {
+        return size <= heapMaxEntryBytes || (diskTier != null && size <= diskMaxEntryBytes);
+    }
+
+    /**
+     * Add an image to every tier whose entry limit it fits
+     * @param imageId GridFS file ID
+     * @param bytes image bytes, which must not be modified afterwards
+     */
+    public void put(String imageId, byte[] bytes) {
+        if (bytes.length <= heapMaxEntryBytes) {
+            heapTier.put(imageId, bytes);
+        }
+        if (diskTier != null && bytes.length <= diskMaxEntryBytes) {
+            DiskEntry written = write(imageId, bytes);
+            if (written != null) {
+                diskTier.put(imageId, written);
+            }
+        }
+    }
+
+    /**
+     * Drop an image from both tiers
+     * @param imageId GridFS file ID
+     */
+    public void invalidate(String imageId) {
+        heapTier.invalidate(imageId);
+        if (diskTier != null) {
+            diskTier.invalidate(imageId);
+        }
+    }
+
+    @EventListener
+    public void onImageDeleted(ImageDeletedEvent event) {
+        invalidate(event.getImageId());
+    }
+
+    private double hitRatio() {
+        double hits = heapHits.count() + diskHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private DiskEntry write(String imageId, byte[] bytes) {
+        Path tempFile = null;
+        try {
+            // Unique file names, so removing a replaced entry never deletes its successor's file
+            tempFile = Files.createTempFile(diskDirectory, imageId + "-", ".tmp");
+            Files.write(tempFile, bytes);
+            Path file = tempFile.resolveSibling(tempFile.getFileName().toString().replace(".tmp", ".img"));
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            return new DiskEntry(file, bytes.length);
+        } catch (IOException e) {
+            log.warn("Failed to write image {} to the disk cache. Error: {}", imageId, e.getMessage());
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                    // best effort
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The disk index lives in memory, so files left behind by a previous run are unreachable and
+     * may belong to images deleted since; start from an empty directory.
+     */
+    private static boolean prepareDirectory(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> leftovers = Files.list(directory)) {
+                leftovers.forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        log.debug("Failed to remove stale cache file {}. Error: {}", path, e.getMessage());
+                    }
+                });
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Image disk cache disabled; directory {} is not usable. Error: {}", directory, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * One cached image on disk. An open channel keeps reading an unlinked file, so a reader that
+     * opened the file before an eviction still sees complete data.
+     */
+    private static final class DiskEntry {
+        private final Path file;
+        private final int size;
+
+        DiskEntry(Path file, int size) {
+            this.file = file;
+            this.size = size;
+        }
+
+        /**
+         * @return false if the file was evicted before it could be opened; nothing has been written then
+         */
+        boolean writeTo(OutputStream outputStream, BufferPool bufferPool) throws IOException {
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            byte[] copyBuffer = bufferPool.acquire();
+            try (channel) {
+                ByteBuffer buffer = ByteBuffer.wrap(copyBuffer);
+                long offset = 0;
+                while (offset < size) {
+                    buffer.clear().limit((int) Math.min(copyBuffer.length, size - offset));
+                    int count = channel.read(buffer, offset);
+                    if (count < 0) {
+                        throw new IOException("Cache file " + file + " is shorter than " + size + " bytes");
+                    }
+                    outputStream.write(copyBuffer, 0, count);
+                    offset += count;
+                }
+                return true;
+            } finally {
+                bufferPool.release(copyBuffer);
+            }
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.debug("Failed to remove cache file {}. Error: {}", file, e.getMessage());
+            }
+        }
+    }
+}
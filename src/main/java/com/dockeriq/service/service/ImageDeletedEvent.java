@@ -0,0 +1,12 @@
+package com.dockeriq.service.service;
+
+import lombok.Value;
+
+/**
+ * Published after a GridFS image file has been deleted, so caches keyed by image ID can drop it.
+ */
+@Value
+public class ImageDeletedEvent {
+
+    String imageId;
+}
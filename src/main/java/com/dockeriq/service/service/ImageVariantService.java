@@ -0,0 +1,215 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.model.Shipment;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.gridfs.model.GridFSFile;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Generates resized variants (thumbnails) of stored images with plain ImageIO and keeps them in
+ * GridFS next to the original. Variants are produced lazily on first request, or at ingest for the
+ * configured eager widths. Concurrent requests for the same variant share a single generation.
+ * Dimensions are read from the image header before decoding, and images above the configured pixel
+ * limit are never decoded, since a decoded image takes four bytes per pixel of heap.
+ */
+@Slf4j
+@Service
+public class ImageVariantService {
+
+    @Autowired
+    private GridFSService gridFSService;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final TreeSet<Integer> widths;
+
+    private final List<Integer> eagerWidths;
+
+    private final long maxPixels;
+
+    // originalId:width -> ID of the file to serve; in-flight generations are shared through the future
+    private final AsyncCache<String, String> variants;
+
+    public ImageVariantService(@Value("${dockeriq.images.variants.widths:128,256,512,1024}") List<Integer> widths,
+                               @Value("${dockeriq.images.variants.eager-widths:}") List<Integer> eagerWidths,
+                               @Value("${dockeriq.images.variants.cache-size:10000}") long cacheSize,
+                               @Value("${dockeriq.images.variants.max-pixels:40000000}") long maxPixels,
+                               @Qualifier("imageVariantExecutor") ExecutorService variantExecutor) {
+        this.widths = new TreeSet<>(widths);
+        this.eagerWidths = eagerWidths;
+        this.maxPixels = maxPixels;
+        this.variants = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .executor(variantExecutor)
+                .buildAsync();
+    }
+
+    /**
+     * Resolve the GridFS file to serve for an image at a requested width.
+     * The width is snapped to the nearest configured width at or above it; images already no wider
+     * than that, images above the pixel limit, and formats ImageIO cannot decode, are served as the original.
+     * @param imageId GridFS ID of the original image
+     * @param requestedWidth requested width in pixels
+     * @return GridFS ID of the variant, or of the original
+     */
+    public String resolveVariant(String imageId, int requestedWidth) {
+        int width = snapWidth(requestedWidth);
+        try {
+            return variants.get(imageId + ":" + width, key -> findOrGenerate(imageId, width)).join();
+        } catch (CompletionException e) {
+            log.warn("Failed to resolve {}px variant of image {}. Serving original. Error: {}", width, imageId, e.getCause().getMessage());
+            return imageId;
+        }
+    }
+
+    /**
+     * Generate the eager variants of freshly stored images in the background
+     * @param imageIds GridFS IDs of the original images
+     */
+    public void generateEagerVariants(List<String> imageIds) {
+        if (eagerWidths.isEmpty() || imageIds == null) {
+            return;
+        }
+        for (String imageId : imageIds) {
+            for (Integer width : eagerWidths) {
+                variants.get(imageId + ":" + snapWidth(width), key -> findOrGenerate(imageId, snapWidth(width)));
+            }
+        }
+    }
+
+    @EventListener
+    public void onImageDeleted(ImageDeletedEvent event) {
+        String prefix = event.getImageId() + ":";
+        variants.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Snap a requested width to the configured width that will actually be served
+     * @param requestedWidth requested width in pixels
+     * @return nearest configured width at or above the request, or the largest configured width
+     */
+    public int snapWidth(int requestedWidth) {
+        Integer width = widths.ceiling(requestedWidth);
+        return width != null ? width : widths.last();
+    }
+
+    private String findOrGenerate(String imageId, int width) {
+        GridFSFile existing = gridFSService.findImageVariant(imageId, width);
+        if (existing != null) {
+            return existing.getObjectId().toHexString();
+        }
+
+        GridFSFile original = gridFSService.getImageInfo(imageId);
+        if (original == null) {
+            throw new IllegalArgumentException("Image not found: " + imageId);
+        }
+        String contentType = original.getMetadata() != null && original.getMetadata().getString("contentType") != null
+                ? original.getMetadata().getString("contentType") : "image/jpeg";
+
+        BufferedImage source = decode(imageId, width);
+        if (source == null) {
+            return imageId;
+        }
+
+        boolean png = "image/png".equalsIgnoreCase(contentType) || "image/gif".equalsIgnoreCase(contentType);
+        String format = png ? "png" : "jpeg";
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        BufferedImage resized = new BufferedImage(width, height, png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(resized, format, outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode variant of image: " + imageId, e);
+        }
+        String filename = width + "w-" + (original.getFilename() != null ? original.getFilename() : imageId);
+        String variantId = gridFSService.storeImageVariant(imageId, width, outputStream.toByteArray(), filename, "image/" + format);
+        recordVariant(imageId, width, variantId);
+        return variantId;
+    }
+    
+    /**
+     * Decode an image for resizing, checking its dimensions from the header first
+     * @return decoded image, or null if the original should be served instead
+     */
+    private BufferedImage decode(String imageId, int width) {
+        try (InputStream inputStream = gridFSService.streamImage(imageId);
+             ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = imageInputStream != null ? ImageIO.getImageReaders(imageInputStream) : null;
+            if (readers == null || !readers.hasNext()) {
+                log.debug("Image {} has a format ImageIO cannot decode; serving original", imageId);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                if (sourceWidth <= width) {
+                    log.debug("No {}px variant needed for image {}; serving original", width, imageId);
+                    return null;
+                }
+                if ((long) sourceWidth * sourceHeight > maxPixels) {
+                    log.warn("Image {} is {}x{} pixels, above the {} pixel limit; serving original",
+                            imageId, sourceWidth, sourceHeight, maxPixels);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decode image: " + imageId, e);
+        }
+    }
+    
+    /**
+     * Add a new variant to the image descriptors embedded in every shipment that references the original
+     */
+    private void recordVariant(String imageId, int width, String variantId) {
+        try {
+            mongoTemplate.updateMulti(
+                Query.query(Criteria.where("images.id").is(imageId)),
+                new Update().set("images.$[image].variants." + width, variantId)
+                    .filterArray(Criteria.where("image.id").is(imageId)),
+                Shipment.class);
+        } catch (Exception e) {
+            log.warn("Failed to record {}px variant of image {} on its shipments. Error: {}", width, imageId, e.getMessage());
+        }
+    }
+}
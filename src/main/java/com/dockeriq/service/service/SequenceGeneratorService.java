@@ -1,6 +1,8 @@
 package com.dockeriq.service.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -8,20 +10,164 @@ import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import com.dockeriq.service.model.DatabaseSequence;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hi/lo sequence generator. Each node reserves a block of values with one atomic $inc
+ * and hands them out locally; the next block is reserved in the background before the
+ * current one runs out. Values are unique across nodes but not gap-free.
+ */
+@Slf4j
 @Service
 public class SequenceGeneratorService {
 
     @Autowired
     private MongoOperations mongoOperations;
 
+    private final int blockSize;
+
+    private final int prefetchThreshold;
+
+    // Sequence names are date-scoped (e.g. shipments_yyyyMMdd), so idle allocators from past days simply expire
+    private final Cache<String, SequenceAllocator> allocators = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sequence-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SequenceGeneratorService(@Value("${dockeriq.sequence.block-size:50}") int blockSize) {
+        this.blockSize = Math.max(blockSize, 1);
+        this.prefetchThreshold = this.blockSize / 5;
+    }
+
+    /**
+     * Get the next value of a sequence from the locally reserved block
+     * @param seqName sequence name
+     * @return next sequence value
+     */
     public long generateSequence(String seqName) {
+        return allocators.get(seqName, SequenceAllocator::new).next();
+    }
+
+    /**
+     * Reserve a contiguous block of values with a single atomic increment
+     * @param seqName sequence name
+     * @param size number of values to reserve
+     * @return reserved block
+     */
+    public SequenceBlock reserveBlock(String seqName, long size) {
         DatabaseSequence counter = mongoOperations.findAndModify(
             Query.query(Criteria.where("_id").is(seqName)),
-            new Update().inc("seq", 1),
-            org.springframework.data.mongodb.core.FindAndModifyOptions.options().returnNew(true).upsert(true),
+            new Update().inc("seq", size),
+            FindAndModifyOptions.options().returnNew(true).upsert(true),
             DatabaseSequence.class
         );
-        return counter != null ? counter.getSeq() : 1;
+        long last = counter != null ? counter.getSeq() : size;
+        log.debug("Reserved sequence block {}: {}-{}", seqName, last - size + 1, last);
+        return new SequenceBlock(last - size + 1, last);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Inclusive range of reserved sequence values
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class SequenceBlock {
+        private final long first;
+        private final long last;
+
+        public long size() {
+            return last - first + 1;
+        }
+    }
+
+    /**
+     * Hands out values of one sequence from the current block and swaps in the prefetched block when it runs out
+     */
+    private final class SequenceAllocator {
+
+        private final String seqName;
+
+        private volatile Range current;
+
+        // Guarded by this
+        private CompletableFuture<SequenceBlock> prefetched;
+
+        SequenceAllocator(String seqName) {
+            this.seqName = seqName;
+        }
+
+        long next() {
+            while (true) {
+                Range range = current;
+                if (range != null) {
+                    long value = range.next.getAndIncrement();
+                    if (value <= range.last) {
+                        if (range.last - value == prefetchThreshold) {
+                            prefetch();
+                        }
+                        return value;
+                    }
+                }
+                advance(range);
+            }
+        }
+
+        private synchronized void prefetch() {
+            if (prefetched == null) {
+                prefetched = CompletableFuture.supplyAsync(() -> reserveBlock(seqName, blockSize), prefetchExecutor);
+            }
+        }
+
+        private synchronized void advance(Range exhausted) {
+            if (current != exhausted) {
+                return; // another thread already moved on to a new block
+            }
+            SequenceBlock block = null;
+            if (prefetched != null) {
+                try {
+                    block = prefetched.join();
+                } catch (CompletionException e) {
+                    log.warn("Background reservation failed for sequence {}. Error: {}", seqName, e.getMessage());
+                }
+                prefetched = null;
+            }
+            if (block == null) {
+                block = reserveBlock(seqName, blockSize);
+            }
+            current = new Range(block.getFirst(), block.getLast());
+        }
+    }
+
+    private static final class Range {
+        private final AtomicLong next;
+        private final long last;
+
+        Range(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
     }
 }
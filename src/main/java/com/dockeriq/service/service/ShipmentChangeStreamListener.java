@@ -0,0 +1,185 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.dto.ShipmentEvent;
+import com.dockeriq.service.utils.RestartingChangeStream;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * The node's single change stream over the shipments collection. It drops shipments cached by
+ * tracking number when any node creates, updates or deletes them, and feeds creations, status
+ * changes and deletions to {@link ShipmentEventBroadcaster} for the SSE event feed. After an error the
+ * stream is restarted by {@link RestartingChangeStream}, and caches and subscribers start over.
+ */
+@Slf4j
+@Component
+public class ShipmentChangeStreamListener {
+
+    // Only what invalidation and events need; inserts and looked-up updates would otherwise ship whole documents
+    private static final Document PROJECTION = new Document("$project", new Document("operationType", 1)
+            .append("ns", 1)
+            .append("documentKey", 1)
+            .append("updateDescription.updatedFields.status", 1)
+            .append("fullDocument.trackingNumber", 1)
+            .append("fullDocument.status", 1)
+            .append("fullDocument.createdBy", 1)
+            .append("fullDocument.tags", 1)
+            .append("fullDocument.lastModifiedBy", 1)
+            .append("fullDocument.updatedAt", 1));
+
+    private final ShipmentLookupCache shipmentLookupCache;
+
+    private final ShipmentEventBroadcaster shipmentEventBroadcaster;
+
+    private final boolean enabled;
+
+    private final RestartingChangeStream changeStream;
+
+    public ShipmentChangeStreamListener(MessageListenerContainer messageListenerContainer,
+                                        ShipmentLookupCache shipmentLookupCache,
+                                        ShipmentEventBroadcaster shipmentEventBroadcaster,
+                                        @Value("${dockeriq.shipments.change-stream.enabled:true}") boolean enabled,
+                                        @Value("${dockeriq.shipments.change-stream.restart-backoff:1s}") Duration restartBackoff,
+                                        @Value("${dockeriq.shipments.change-stream.max-restart-backoff:1m}") Duration maxRestartBackoff) {
+        this.shipmentLookupCache = shipmentLookupCache;
+        this.shipmentEventBroadcaster = shipmentEventBroadcaster;
+        this.enabled = enabled;
+        // Updates carry only changed fields; the lookup supplies creator and tags for event filters
+        this.changeStream = new RestartingChangeStream(messageListenerContainer, "shipments",
+                request -> request.fullDocumentLookup(FullDocument.UPDATE_LOOKUP).filter(PROJECTION),
+                this::onEvent, this::onError, restartBackoff, maxRestartBackoff);
+    }
+
+    @PostConstruct
+    public void register() {
+        if (!enabled) {
+            log.info("Shipment change stream disabled; cached tracking number lookups rely on TTL expiry and no shipment events are sent");
+            return;
+        }
+        changeStream.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        changeStream.stop();
+    }
+
+    private void onError() {
+        // Writes made until the stream is back are not seen; resuming replays them to this node, but
+        // anything cached or sent meanwhile may be stale, and without a token they are lost
+        log.info("Dropping cached tracking number lookups and resetting event subscribers after a shipments change stream error");
+        shipmentLookupCache.invalidateAll();
+        shipmentEventBroadcaster.reset();
+    }
+
+    private void onEvent(ChangeStreamDocument<Document> event) {
+        try {
+            process(event);
+        } catch (RuntimeException e) {
+            // An exception here would restart the stream and replay this event; drop what may now be stale and carry on
+            log.warn("Failed to process shipment change event; dropping cached tracking number lookups. Error: {}", e.getMessage(), e);
+            shipmentLookupCache.invalidateAll();
+        }
+    }
+
+    private void process(ChangeStreamDocument<Document> event) {
+        OperationType operationType = event.getOperationType();
+        BsonValue id = event.getDocumentKey() != null ? event.getDocumentKey().get("_id") : null;
+        if (id == null) {
+            // drop, rename or invalidate of the collection
+            log.debug("Shipment change event {}; dropping cached tracking number lookups", operationType);
+            shipmentLookupCache.invalidateAll();
+            return;
+        }
+        String shipmentId = id.isObjectId() ? id.asObjectId().getValue().toHexString()
+                : id.isString() ? id.asString().getValue() : id.toString();
+        log.debug("Shipment change event {} for ID: {}", operationType, shipmentId);
+
+        Document shipment = event.getFullDocument();
+        if (operationType == OperationType.INSERT) {
+            // A new shipment only affects a cached "not found" for its tracking number
+            if (shipment != null) {
+                shipmentLookupCache.invalidate(shipment.getString("trackingNumber"));
+            }
+        } else if (shipment != null && shipment.getString("trackingNumber") != null) {
+            // Looked up for updates and replaces; deletes only carry the ID
+            shipmentLookupCache.invalidate(shipment.getString("trackingNumber"));
+        } else {
+            shipmentLookupCache.invalidateById(shipmentId);
+        }
+
+        String type = eventType(event);
+        if (type != null) {
+            shipmentEventBroadcaster.publish(resumeToken(event), toEvent(type, shipmentId, event));
+        }
+    }
+
+    private static String eventType(ChangeStreamDocument<Document> event) {
+        switch (event.getOperationType()) {
+            case INSERT:
+                return ShipmentEventBroadcaster.EVENT_CREATED;
+            case DELETE:
+                return ShipmentEventBroadcaster.EVENT_DELETED;
+            case UPDATE:
+                BsonDocument updatedFields = event.getUpdateDescription() != null
+                        ? event.getUpdateDescription().getUpdatedFields() : null;
+                return updatedFields != null && updatedFields.containsKey("status")
+                        ? ShipmentEventBroadcaster.EVENT_STATUS : null;
+            case REPLACE:
+                return ShipmentEventBroadcaster.EVENT_STATUS;
+            default:
+                return null;
+        }
+    }
+
+    private static ShipmentEvent toEvent(String type, String shipmentId, ChangeStreamDocument<Document> event) {
+        ShipmentEvent shipmentEvent = new ShipmentEvent();
+        shipmentEvent.setType(type);
+        shipmentEvent.setId(shipmentId);
+        Document shipment = event.getFullDocument();
+        if (shipment != null) {
+            shipmentEvent.setTrackingNumber(shipment.getString("trackingNumber"));
+            shipmentEvent.setStatus(shipment.getString("status"));
+            shipmentEvent.setCreatedBy(shipment.getString("createdBy"));
+            shipmentEvent.setTags(shipment.getList("tags", String.class));
+            shipmentEvent.setLastModifiedBy(shipment.getString("lastModifiedBy"));
+            Date updatedAt = shipment.getDate("updatedAt");
+            if (updatedAt != null) {
+                shipmentEvent.setUpdatedAt(LocalDateTime.ofInstant(updatedAt.toInstant(), ZoneId.systemDefault()));
+            }
+        }
+        BsonDocument updatedFields = event.getUpdateDescription() != null
+                ? event.getUpdateDescription().getUpdatedFields() : null;
+        if (updatedFields != null && updatedFields.isString("status")) {
+            // The status this update wrote; the looked-up document may already reflect a later one
+            shipmentEvent.setStatus(updatedFields.getString("status").getValue());
+        }
+        return shipmentEvent;
+    }
+
+    private static String resumeToken(ChangeStreamDocument<Document> event) {
+        BsonDocument token = event.getResumeToken();
+        if (token == null) {
+            return null;
+        }
+        return token.isString("_data") ? token.getString("_data").getValue() : token.toJson();
+    }
+}
@@ -0,0 +1,341 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.dto.ShipmentEvent;
+import com.dockeriq.service.model.ShipmentStatus;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fans shipment change events from the node's single shipments change stream out to SSE subscribers.
+ * Every subscriber has a bounded queue drained by the sender pool, so one slow client never delays
+ * the stream or the others; a subscriber whose queue overflows is disconnected and resumes on
+ * reconnect. Event IDs are change stream resume tokens, and the most recent events are kept so
+ * a client reconnecting with Last-Event-ID receives what it missed.
+ */
+@Slf4j
+@Service
+public class ShipmentEventBroadcaster {
+
+    public static final String EVENT_CREATED = "created";
+    public static final String EVENT_STATUS = "status";
+    public static final String EVENT_DELETED = "deleted";
+    public static final String EVENT_RESET = "reset";
+
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService senderExecutor;
+
+    private final int bufferSize;
+
+    private final int replaySize;
+
+    // One permit per open stream, taken before the emitter exists and returned when it completes
+    private final Semaphore subscriberSlots;
+
+    private final long timeoutMillis;
+
+    private final Duration heartbeatInterval;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    // Recent events, oldest first; also guards publishing against subscribing so replay and live events never overlap
+    private final ArrayDeque<Outgoing> recentEvents = new ArrayDeque<>();
+
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "shipment-events-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ShipmentEventBroadcaster(ObjectMapper objectMapper,
+                                    @Qualifier("shipmentEventExecutor") ExecutorService senderExecutor,
+                                    @Value("${dockeriq.shipments.events.buffer-size:256}") int bufferSize,
+                                    @Value("${dockeriq.shipments.events.replay-size:10000}") int replaySize,
+                                    @Value("${dockeriq.shipments.events.max-subscribers:1000}") int maxSubscribers,
+                                    @Value("${dockeriq.shipments.events.timeout:30m}") Duration timeout,
+                                    @Value("${dockeriq.shipments.events.heartbeat:20s}") Duration heartbeatInterval) {
+        this.objectMapper = objectMapper;
+        this.senderExecutor = senderExecutor;
+        this.bufferSize = Math.max(bufferSize, 1);
+        this.replaySize = Math.max(replaySize, 0);
+        this.subscriberSlots = new Semaphore(Math.max(maxSubscribers, 0));
+        this.timeoutMillis = timeout.toMillis();
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    @PostConstruct
+    public void startHeartbeat() {
+        // Comments keep idle connections open through proxies and reveal clients that went away
+        long interval = heartbeatInterval.toMillis();
+        heartbeatScheduler.scheduleAtFixedRate(() -> subscribers.forEach(Subscriber::heartbeat),
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeatScheduler.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+    }
+
+    /**
+     * Open an event stream for one client
+     * @param statuses statuses to receive events for, or null/empty for all
+     * @param createdBy creator to receive events for, or null for all
+     * @param tag tag a shipment must carry, or null for all
+     * @param lastEventId ID of the last event the client received, to replay what it missed
+     * @return emitter to return from the request handler
+     * @throws RejectedExecutionException if the node already serves the maximum number of subscribers
+     */
+    public SseEmitter subscribe(List<String> statuses, String createdBy, String tag, String lastEventId) {
+        if (!subscriberSlots.tryAcquire()) {
+            throw new RejectedExecutionException("Shipment event subscriber limit reached");
+        }
+        List<String> knownStatuses = statuses == null ? List.of() : statuses.stream()
+            .map(status -> ShipmentStatus.normalize(status) != null ? ShipmentStatus.normalize(status) : status)
+            .toList();
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, knownStatuses, blankToNull(createdBy), blankToNull(tag));
+        emitter.onCompletion(subscriber::release);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.release());
+
+        synchronized (recentEvents) {
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                replay(subscriber, lastEventId.trim());
+            }
+            subscribers.add(subscriber);
+        }
+        log.debug("Shipment event subscriber added. Statuses: {}, Created by: {}, Tag: {}, Subscribers: {}",
+                knownStatuses, createdBy, tag, subscribers.size());
+        return emitter;
+    }
+
+    /**
+     * Deliver an event to every matching subscriber and remember it for replay
+     * @param resumeToken change stream resume token of the event, used as the SSE event ID
+     * @param event shipment event
+     */
+    public void publish(String resumeToken, ShipmentEvent event) {
+        Outgoing outgoing;
+        try {
+            // Serialized once, whatever the number of subscribers
+            outgoing = new Outgoing(resumeToken, event, objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize shipment event for ID: {}. Error: {}", event.getId(), e.getMessage());
+            return;
+        }
+        synchronized (recentEvents) {
+            if (replaySize > 0) {
+                if (recentEvents.size() == replaySize) {
+                    recentEvents.removeFirst();
+                }
+                recentEvents.addLast(outgoing);
+            }
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(outgoing);
+            }
+        }
+    }
+
+    /**
+     * Tell every subscriber to reload its state, when events may have been missed (the change stream
+     * was interrupted). Buffered events are dropped too, so reconnecting clients reload as well.
+     */
+    public void reset() {
+        synchronized (recentEvents) {
+            recentEvents.clear();
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(RESET);
+            }
+        }
+    }
+
+    /**
+     * Queue the events after lastEventId; if it is no longer (or never was) buffered, or more were
+     * missed than the subscriber's queue holds, tell the client to reload its state instead
+     */
+    private void replay(Subscriber subscriber, String lastEventId) {
+        List<Outgoing> missed = new ArrayList<>();
+        boolean found = false;
+        for (Iterator<Outgoing> events = recentEvents.iterator(); events.hasNext(); ) {
+            Outgoing outgoing = events.next();
+            if (found) {
+                missed.add(outgoing);
+            } else if (outgoing.id.equals(lastEventId)) {
+                found = true;
+            }
+        }
+        if (!found || missed.size() >= bufferSize) {
+            log.debug("Cannot replay after Last-Event-ID {}; sending reset", lastEventId);
+            subscriber.offer(RESET);
+            return;
+        }
+        log.debug("Replaying {} shipment events after {}", missed.size(), lastEventId);
+        missed.forEach(subscriber::offer);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    /**
+     * An event ready to send; a null event is a heartbeat comment
+     */
+    private record Outgoing(String id, ShipmentEvent event, String data) {
+    }
+
+    private static final Outgoing HEARTBEAT = new Outgoing(null, null, null);
+
+    private static final Outgoing RESET = resetEvent();
+
+    private static Outgoing resetEvent() {
+        ShipmentEvent reset = new ShipmentEvent();
+        reset.setType(EVENT_RESET);
+        return new Outgoing(null, reset, "{\"type\":\"" + EVENT_RESET + "\"}");
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final List<String> statuses;
+        private final String createdBy;
+        private final String tag;
+        private final BlockingQueue<Outgoing> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile boolean completed;
+
+        Subscriber(SseEmitter emitter, List<String> statuses, String createdBy, String tag) {
+            this.emitter = emitter;
+            this.statuses = statuses;
+            this.createdBy = createdBy;
+            this.tag = tag;
+        }
+
+        void offer(Outgoing outgoing) {
+            if (closed || !matches(outgoing.event)) {
+                return;
+            }
+            if (!queue.offer(outgoing)) {
+                // Too far behind; the client reconnects with Last-Event-ID and catches up from the replay buffer
+                log.info("Disconnecting slow shipment event subscriber after {} queued events", bufferSize);
+                close();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        void heartbeat() {
+            // A full queue already has data on its way
+            if (!closed && queue.offer(HEARTBEAT)) {
+                scheduleDrain();
+            }
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+            scheduleDrain();
+        }
+
+        /**
+         * Give back the subscriber slot once the stream has ended, however it ended
+         */
+        void release() {
+            subscribers.remove(this);
+            if (released.compareAndSet(false, true)) {
+                subscriberSlots.release();
+            }
+        }
+
+        private boolean matches(ShipmentEvent event) {
+            if (event == null || EVENT_RESET.equals(event.getType()) || EVENT_DELETED.equals(event.getType())) {
+                // Deleted events carry no fields to filter on; clients drop IDs they do not show
+                return true;
+            }
+            return (statuses.isEmpty() || statuses.contains(event.getStatus()))
+                && (createdBy == null || createdBy.equals(event.getCreatedBy()))
+                && (tag == null || (event.getTags() != null && event.getTags().contains(tag)));
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senderExecutor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // No sender for this subscriber; end the stream so the client reconnects and resumes
+                    log.warn("No sender available for shipment event subscriber; closing its stream");
+                    closed = true;
+                    subscribers.remove(this);
+                    queue.clear();
+                    if (!completed) {
+                        completed = true;
+                        emitter.complete();
+                    }
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Outgoing outgoing;
+                while (!closed && (outgoing = queue.poll()) != null) {
+                    emitter.send(outgoing.event == null
+                        ? SseEmitter.event().comment("keep-alive")
+                        : toSse(outgoing));
+                }
+                if (closed && !completed) {
+                    completed = true;
+                    queue.clear();
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client went away or the response already completed
+                completed = true;
+                closed = true;
+                subscribers.remove(this);
+                queue.clear();
+            } finally {
+                draining.set(false);
+            }
+            // Anything queued or a close requested while this drain was finishing
+            if (closed ? !completed : !queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        private SseEmitter.SseEventBuilder toSse(Outgoing outgoing) {
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().name(outgoing.event.getType()).data(outgoing.data);
+            return outgoing.id != null ? builder.id(outgoing.id) : builder;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.model.BasicInformation;
+import com.dockeriq.service.model.Shipment;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Streams shipment dumps for reporting straight from a MongoDB cursor. Documents are decoded one
+ * batch at a time and written as they arrive, so memory use does not grow with the collection.
+ */
+@Slf4j
+@Service
+public class ShipmentExportService {
+
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    private static final String[] CSV_HEADER = {
+        "id", "trackingNumber", "status", "shipmentTitle", "destination", "origin", "carrier", "priority",
+        "barcode", "weight", "weightUnit", "estimatedDeliveryDate", "imageCount", "tags", "notes",
+        "createdBy", "lastModifiedBy", "createdAt", "updatedAt"
+    };
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final int batchSize;
+
+    public ShipmentExportService(@Value("${dockeriq.shipments.export.batch-size:500}") int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    /**
+     * Write every shipment matching the filters, newest first
+     * @param format {@link #FORMAT_NDJSON} or {@link #FORMAT_CSV}
+     * @param from inclusive lower bound on createdAt, or null
+     * @param to exclusive upper bound on createdAt, or null
+     * @param statuses statuses to include, or null/empty for all
+     * @param outputStream destination, flushed after every batch but not closed
+     * @return number of shipments written
+     * @throws IOException if writing fails
+     */
+    public long export(String format, LocalDateTime from, LocalDateTime to, List<String> statuses,
+                       OutputStream outputStream) throws IOException {
+        Query query = new Query();
+        if (from != null || to != null) {
+            Criteria createdAt = Criteria.where("createdAt");
+            if (from != null) {
+                createdAt.gte(from);
+            }
+            if (to != null) {
+                createdAt.lt(to);
+            }
+            query.addCriteria(createdAt);
+        }
+        if (statuses != null && !statuses.isEmpty()) {
+            query.addCriteria(Criteria.where("status").in(statuses));
+        }
+        query.with(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id")));
+        query.cursorBatchSize(batchSize);
+
+        log.info("Exporting shipments as {}. From: {}, To: {}, Statuses: {}", format, from, to, statuses);
+        long count;
+        try (Stream<Shipment> shipments = mongoTemplate.stream(query, Shipment.class)) {
+            count = FORMAT_CSV.equals(format)
+                ? writeCsv(shipments.iterator(), outputStream)
+                : writeNdjson(shipments.iterator(), outputStream);
+        }
+        log.info("Exported {} shipments as {}", count, format);
+        return count;
+    }
+
+    private long writeNdjson(Iterator<Shipment> shipments, OutputStream outputStream) throws IOException {
+        long count = 0;
+        try (SequenceWriter writer = objectMapper.writerFor(Shipment.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n")
+                .writeValues(outputStream)) {
+            while (shipments.hasNext()) {
+                writer.write(shipments.next());
+                if (++count % batchSize == 0) {
+                    writer.flush();
+                }
+            }
+        }
+        if (count > 0) {
+            outputStream.write('\n');
+        }
+        outputStream.flush();
+        return count;
+    }
+
+    private long writeCsv(Iterator<Shipment> shipments, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writeCsvRow(writer, (Object[]) CSV_HEADER);
+        long count = 0;
+        while (shipments.hasNext()) {
+            Shipment shipment = shipments.next();
+            BasicInformation info = shipment.getBasicInformation() != null ? shipment.getBasicInformation() : new BasicInformation();
+            writeCsvRow(writer,
+                shipment.getId(), shipment.getTrackingNumber(), shipment.getStatus(),
+                info.getShipmentTitle(), info.getDestination(), info.getOrigin(), info.getCarrier(), info.getPriority(),
+                info.getBarcode(), info.getWeight(), info.getWeightUnit(), info.getEstimatedDeliveryDate(),
+                shipment.getImageIds() != null ? shipment.getImageIds().size() : 0,
+                shipment.getTags() != null ? String.join(";", shipment.getTags()) : null,
+                shipment.getNotes(), shipment.getCreatedBy(), shipment.getLastModifiedBy(),
+                shipment.getCreatedAt(), shipment.getUpdatedAt());
+            if (++count % batchSize == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void writeCsvRow(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                writer.write(escapeCsv(values[i].toString()));
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    // RFC 4180: quote fields containing separators, quotes or line breaks, doubling embedded quotes
+    private static String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,429 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.dto.StoredImage;
+import com.dockeriq.service.model.Shipment;
+import com.dockeriq.service.model.ShipmentIngest;
+import com.dockeriq.service.model.ShipmentIngest.StagedImage;
+import com.dockeriq.service.repository.ShipmentIngestRepository;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Asynchronous shipment ingest. The request thread only stages the uploaded parts on local disk,
+ * records a pending ingest and returns; a bounded background pipeline stores the images in GridFS
+ * and writes the final shipment, retrying with backoff on failure. A node holds a lease on an ingest
+ * while it works on it; ingests whose lease ran out (the node stopped or died) are claimed by any node,
+ * so the staging directory must be shared storage when more than one node accepts ingests.
+ */
+@Slf4j
+@Service
+public class ShipmentIngestService {
+    
+    @Autowired
+    private ShipmentIngestRepository ingestRepository;
+    
+    @Autowired
+    private ShipmentService shipmentService;
+    
+    @Autowired
+    private GridFSService gridFSService;
+    
+    @Autowired
+    private ImageVariantService imageVariantService;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private Validator validator;
+    
+    @Autowired
+    @Qualifier("shipmentIngestExecutor")
+    private ExecutorService ingestExecutor;
+    
+    @Value("${dockeriq.ingest.max-attempts:3}")
+    private int maxAttempts;
+    
+    @Value("${dockeriq.ingest.retry-backoff-ms:2000}")
+    private long retryBackoffMs;
+    
+    @Value("${dockeriq.ingest.lease:5m}")
+    private Duration lease;
+    
+    private final Path stagingDir;
+    
+    private final String node;
+    
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ingest-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    public ShipmentIngestService(@Value("${dockeriq.ingest.staging-dir:${java.io.tmpdir}/dockeriq-ingest}") String stagingDir) {
+        this.stagingDir = Paths.get(stagingDir);
+        this.node = resolveNodeName();
+    }
+    
+    /**
+     * Accept a shipment for background processing. Uploaded parts are moved into the staging
+     * directory (a rename for parts the container already spooled to disk), so this returns as
+     * soon as the upload itself has finished.
+     * @param shipment shipment data
+     * @param images uploaded images (optional)
+     * @return pending ingest with its reserved tracking number
+     * @throws ConstraintViolationException if the shipment data is invalid
+     * @throws RejectedExecutionException if the pipeline queue is full
+     */
+    public ShipmentIngest accept(Shipment shipment, List<MultipartFile> images) {
+        // Rejected now, while the client can still fix it, rather than after the retries run out
+        Set<ConstraintViolation<Shipment>> violations = validator.validate(shipment);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException("Invalid shipment data", violations);
+        }
+        String ingestId = new ObjectId().toHexString();
+        log.info("Accepting shipment ingest {}. Images count: {}", ingestId, images != null ? images.size() : 0);
+        
+        shipment.setId(new ObjectId().toHexString());
+        shipment.setTrackingNumber(shipmentService.reserveTrackingNumber());
+        shipmentService.clearImages(shipment);
+        
+        List<StagedImage> stagedImages = stageImages(ingestId, images);
+        
+        LocalDateTime now = LocalDateTime.now();
+        ShipmentIngest ingest = new ShipmentIngest();
+        ingest.setId(ingestId);
+        ingest.setTrackingNumber(shipment.getTrackingNumber());
+        ingest.setShipmentId(shipment.getId());
+        ingest.setStatus(ShipmentIngest.PENDING);
+        ingest.setShipment(shipment);
+        ingest.setStagedImages(stagedImages);
+        ingest.setNode(node);
+        ingest.setLeaseUntil(now.plus(lease));
+        ingest.setCreatedAt(now);
+        ingest.setUpdatedAt(now);
+        ingestRepository.save(ingest);
+        
+        try {
+            ingestExecutor.execute(() -> process(ingestId));
+        } catch (RejectedExecutionException e) {
+            log.warn("Ingest pipeline is full; rejecting ingest {}", ingestId);
+            markFailed(ingest, "Ingest pipeline is full");
+            throw e;
+        }
+        log.info("Accepted shipment ingest {} with tracking number: {}", ingestId, ingest.getTrackingNumber());
+        return ingest;
+    }
+    
+    /**
+     * Get ingest status
+     * @param ingestId ingest ID
+     * @return ingest if found
+     */
+    public Optional<ShipmentIngest> getIngest(String ingestId) {
+        return ingestRepository.findById(ingestId);
+    }
+    
+    /**
+     * Start looking for ingests whose node stopped before finishing them, on this node or any other
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRecovery() {
+        long interval = Math.max(lease.toMillis() / 2, 1000L);
+        retryScheduler.scheduleWithFixedDelay(this::recoverStaleIngests, 0, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    private void recoverStaleIngests() {
+        try {
+            Query query = new Query(Criteria.where("status").in(ShipmentIngest.PENDING, ShipmentIngest.PROCESSING)
+                    .orOperator(Criteria.where("leaseUntil").lt(LocalDateTime.now()), Criteria.where("leaseUntil").exists(false)));
+            query.fields().include("_id");
+            List<ShipmentIngest> stale = mongoTemplate.find(query, ShipmentIngest.class);
+            if (stale.isEmpty()) {
+                return;
+            }
+            log.info("Recovering {} unfinished shipment ingests", stale.size());
+            for (ShipmentIngest ingest : stale) {
+                resubmit(ingest.getId());
+            }
+        } catch (Exception e) {
+            log.warn("Failed to look up unfinished shipment ingests. Error: {}", e.getMessage());
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+    
+    private void process(String ingestId) {
+        ShipmentIngest ingest = claim(ingestId);
+        if (ingest == null) {
+            // Finished, failed, or being processed under another live lease
+            return;
+        }
+        if (ingest.getAttempts() > maxAttempts) {
+            // Earlier attempts ended without recording a result, e.g. their node died
+            log.error("Shipment ingest {} failed after {} attempts", ingestId, ingest.getAttempts() - 1);
+            markFailed(ingest, ingest.getLastError() != null ? ingest.getLastError() : "Ingest was not finished");
+            return;
+        }
+        log.debug("Processing shipment ingest {}. Attempt: {}", ingestId, ingest.getAttempts());
+        
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        ScheduledFuture<?> renewal = renewLease(ingest, leaseLost);
+        try {
+            // A previous attempt may have written the shipment but not the ingest status
+            if (shipmentService.getShipmentById(ingest.getShipmentId()).isEmpty()) {
+                Shipment shipment = ingest.getShipment();
+                List<StoredImage> storedImages = storeStagedImages(ingest.getStagedImages());
+                List<String> imageIds = storedImages.stream().map(StoredImage::getId).toList();
+                if (leaseLost.get()) {
+                    deleteImages(imageIds);
+                    log.warn("Lost the lease on shipment ingest {}; leaving it to the node that took it over", ingestId);
+                    return;
+                }
+                try {
+                    shipmentService.attachImages(shipment, storedImages);
+                    shipmentService.createIngestedShipment(shipment);
+                } catch (RuntimeException e) {
+                    deleteImages(imageIds);
+                    throw e;
+                }
+                imageVariantService.generateEagerVariants(imageIds);
+            }
+            
+            LocalDateTime now = LocalDateTime.now();
+            Update completed = new Update()
+                    .set("status", ShipmentIngest.COMPLETED)
+                    .unset("lastError")
+                    .unset("shipment")
+                    .set("updatedAt", now)
+                    .set("completedAt", now);
+            if (!updateOwned(ingest, completed)) {
+                // The shipment exists, so the node that took over completes the ingest without writing it again
+                log.warn("Lost the lease on shipment ingest {} before recording its completion", ingestId);
+                return;
+            }
+            deleteStagedImages(ingest.getStagedImages());
+            log.info("Completed shipment ingest {} with tracking number: {}", ingestId, ingest.getTrackingNumber());
+        } catch (Exception e) {
+            log.warn("Shipment ingest {} failed on attempt {}. Error: {}", ingestId, ingest.getAttempts(), e.getMessage());
+            if (ingest.getAttempts() < maxAttempts) {
+                LocalDateTime now = LocalDateTime.now();
+                long delay = retryBackoffMs * (1L << (ingest.getAttempts() - 1));
+                // Keep the lease over the backoff so no other node picks the retry up first
+                Update retry = new Update()
+                        .set("status", ShipmentIngest.PENDING)
+                        .set("lastError", e.getMessage())
+                        .set("updatedAt", now)
+                        .set("leaseUntil", now.plus(lease).plusNanos(delay * 1_000_000L));
+                if (updateOwned(ingest, retry)) {
+                    retryScheduler.schedule(() -> resubmit(ingestId), delay, TimeUnit.MILLISECONDS);
+                } else {
+                    log.warn("Lost the lease on shipment ingest {}; not retrying it here", ingestId);
+                }
+            } else {
+                log.error("Shipment ingest {} failed after {} attempts", ingestId, ingest.getAttempts());
+                markFailed(ingest, e.getMessage());
+            }
+        } finally {
+            renewal.cancel(false);
+        }
+    }
+    
+    /**
+     * Extend the lease periodically while an attempt runs, so long attempts are not taken over.
+     * Once the ingest is no longer held by this attempt, the flag is set and the attempt stops.
+     */
+    private ScheduledFuture<?> renewLease(ShipmentIngest ingest, AtomicBoolean leaseLost) {
+        long interval = Math.max(lease.toMillis() / 3, 1000L);
+        return retryScheduler.scheduleAtFixedRate(() -> {
+            if (leaseLost.get()) {
+                return;
+            }
+            try {
+                if (!updateOwned(ingest, new Update().set("leaseUntil", LocalDateTime.now().plus(lease)))) {
+                    leaseLost.set(true);
+                }
+            } catch (Exception e) {
+                // The current lease still holds until it runs out; the next renewal tries again
+                log.warn("Failed to renew the lease on shipment ingest {}. Error: {}", ingest.getId(), e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Update an ingest only while this node still holds it under the same attempt. A claim by another
+     * node, or a later claim by this one, changes the node or the attempt count, so the stale attempt's
+     * writes do not overwrite the newer state.
+     * @return true if the ingest was updated
+     */
+    private boolean updateOwned(ShipmentIngest ingest, Update update) {
+        Query query = new Query(Criteria.where("_id").is(ingest.getId())
+                .and("node").is(node)
+                .and("attempts").is(ingest.getAttempts())
+                .and("status").in(ShipmentIngest.PENDING, ShipmentIngest.PROCESSING));
+        return mongoTemplate.updateFirst(query, update, ShipmentIngest.class).getModifiedCount() > 0;
+    }
+    
+    /**
+     * Take the lease on an ingest: a node may start the ingests it accepted itself and any ingest
+     * whose lease has run out
+     * @return claimed ingest, or null if it is not available
+     */
+    private ShipmentIngest claim(String ingestId) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = new Query(Criteria.where("_id").is(ingestId)
+                .and("status").in(ShipmentIngest.PENDING, ShipmentIngest.PROCESSING)
+                .orOperator(Criteria.where("node").is(node).and("status").is(ShipmentIngest.PENDING),
+                        Criteria.where("leaseUntil").lt(now),
+                        Criteria.where("leaseUntil").exists(false)));
+        Update update = new Update()
+                .set("status", ShipmentIngest.PROCESSING)
+                .set("node", node)
+                .set("leaseUntil", now.plus(lease))
+                .set("updatedAt", now)
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), ShipmentIngest.class);
+    }
+    
+    private void resubmit(String ingestId) {
+        try {
+            ingestExecutor.execute(() -> process(ingestId));
+        } catch (RejectedExecutionException e) {
+            log.debug("Ingest pipeline still full; delaying retry of ingest {}", ingestId);
+            retryScheduler.schedule(() -> resubmit(ingestId), retryBackoffMs, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private void markFailed(ShipmentIngest ingest, String error) {
+        LocalDateTime now = LocalDateTime.now();
+        Update failed = new Update()
+                .set("status", ShipmentIngest.FAILED)
+                .set("lastError", error)
+                .set("updatedAt", now)
+                .set("completedAt", now);
+        if (!updateOwned(ingest, failed)) {
+            log.warn("Shipment ingest {} was taken over by another attempt; not marking it failed", ingest.getId());
+            return;
+        }
+        ingest.setStatus(ShipmentIngest.FAILED);
+        ingest.setLastError(error);
+        deleteStagedImages(ingest.getStagedImages());
+    }
+    
+    private List<StagedImage> stageImages(String ingestId, List<MultipartFile> images) {
+        List<StagedImage> stagedImages = new ArrayList<>();
+        if (images == null || images.isEmpty()) {
+            return stagedImages;
+        }
+        try {
+            Files.createDirectories(stagingDir);
+            for (int i = 0; i < images.size(); i++) {
+                MultipartFile image = images.get(i);
+                Path target = stagingDir.resolve(ingestId + "-" + i);
+                image.transferTo(target.toFile());
+                
+                StagedImage stagedImage = new StagedImage();
+                stagedImage.setPath(target.toString());
+                stagedImage.setFilename(image.getOriginalFilename());
+                stagedImage.setContentType(image.getContentType());
+                stagedImages.add(stagedImage);
+            }
+            return stagedImages;
+        } catch (IOException e) {
+            log.error("Failed to stage images for ingest {}. Error: {}", ingestId, e.getMessage(), e);
+            deleteStagedImages(stagedImages);
+            throw new RuntimeException("Failed to stage images for ingest: " + ingestId, e);
+        }
+    }
+    
+    private List<StoredImage> storeStagedImages(List<StagedImage> stagedImages) {
+        List<StoredImage> storedImages = new ArrayList<>();
+        if (stagedImages == null) {
+            return storedImages;
+        }
+        try {
+            for (StagedImage stagedImage : stagedImages) {
+                try (InputStream inputStream = Files.newInputStream(Paths.get(stagedImage.getPath()))) {
+                    storedImages.add(gridFSService.storeImage(inputStream, stagedImage.getFilename(), stagedImage.getContentType()));
+                }
+            }
+            return storedImages;
+        } catch (Exception e) {
+            // Leave no partial image set behind; the next attempt stores all images again
+            deleteImages(storedImages.stream().map(StoredImage::getId).toList());
+            throw new RuntimeException("Failed to store staged images: " + e.getMessage(), e);
+        }
+    }
+    
+    private void deleteImages(List<String> imageIds) {
+        for (String imageId : imageIds) {
+            try {
+                gridFSService.releaseImage(imageId);
+            } catch (Exception e) {
+                log.warn("Failed to roll back image with ID: {}. Error: {}", imageId, e.getMessage());
+            }
+        }
+    }
+    
+    private void deleteStagedImages(List<StagedImage> stagedImages) {
+        if (stagedImages == null) {
+            return;
+        }
+        for (StagedImage stagedImage : stagedImages) {
+            try {
+                Files.deleteIfExists(Paths.get(stagedImage.getPath()));
+            } catch (IOException e) {
+                log.warn("Failed to delete staged image {}. Error: {}", stagedImage.getPath(), e.getMessage());
+            }
+        }
+    }
+    
+    private static String resolveNodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+}
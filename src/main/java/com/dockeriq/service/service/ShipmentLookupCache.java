@@ -0,0 +1,140 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.model.Shipment;
+import com.dockeriq.service.repository.ShipmentRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Read-through cache of shipments by tracking number for the lookup endpoint. Concurrent misses
+ * for the same tracking number share one database query, and unknown tracking numbers are
+ * remembered for a shorter TTL so repeated lookups of a mistyped number stay off the database.
+ * ShipmentService invalidates entries on local writes and {@link ShipmentChangeStreamListener}
+ * for writes made on other nodes; the TTLs bound staleness if a change event is missed.
+ * Cached shipments are shared between callers and must not be modified.
+ */
+@Slf4j
+@Component
+public class ShipmentLookupCache {
+
+    private final ShipmentRepository shipmentRepository;
+
+    private final Cache<String, Optional<Shipment>> shipments;
+
+    // Shipment ID -> tracking number of cached shipments, so deletions (whose change events only carry
+    // the ID) are one lookup. Tracking numbers never change, so entries are never wrong, only possibly
+    // gone early; it holds more entries for longer than the cache so that stays rare, and the TTL covers it.
+    private final Cache<String, String> trackingNumbersById;
+
+    public ShipmentLookupCache(ShipmentRepository shipmentRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${dockeriq.shipments.lookup-cache.ttl:30s}") Duration ttl,
+                               @Value("${dockeriq.shipments.lookup-cache.negative-ttl:5s}") Duration negativeTtl,
+                               @Value("${dockeriq.shipments.lookup-cache.max-size:10000}") long maxSize) {
+        this.shipmentRepository = shipmentRepository;
+        this.shipments = Caffeine.newBuilder()
+                .expireAfter(new FoundOrMissingExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, shipments, "shipmentsByTrackingNumber");
+        this.trackingNumbersById = Caffeine.newBuilder()
+                .expireAfterWrite(ttl.multipliedBy(2))
+                .maximumSize(maxSize * 2)
+                .build();
+    }
+
+    /**
+     * Get the shipment with a tracking number, loading it from the database on a miss
+     * @param trackingNumber shipment tracking number
+     * @return shipment if it exists
+     */
+    public Optional<Shipment> get(String trackingNumber) {
+        return shipments.get(trackingNumber, key -> {
+            Optional<Shipment> shipment = shipmentRepository.findByTrackingNumber(key);
+            shipment.ifPresent(found -> trackingNumbersById.put(found.getId(), key));
+            return shipment;
+        });
+    }
+
+    /**
+     * Get a cached lookup result without loading
+     * @param trackingNumber shipment tracking number
+     * @return cached result, or null if the tracking number is not cached
+     */
+    public Optional<Shipment> getIfPresent(String trackingNumber) {
+        return shipments.getIfPresent(trackingNumber);
+    }
+
+    /**
+     * Drop the cached lookup result for a tracking number, found or not
+     * @param trackingNumber shipment tracking number
+     */
+    public void invalidate(String trackingNumber) {
+        if (trackingNumber != null) {
+            log.debug("Invalidating cached shipment for tracking number: {}", trackingNumber);
+            shipments.invalidate(trackingNumber);
+        }
+    }
+
+    /**
+     * Drop the cached shipment with a document ID (change events for deletes only carry the ID)
+     * @param shipmentId shipment document ID
+     */
+    public void invalidateById(String shipmentId) {
+        if (shipmentId != null) {
+            String trackingNumber = trackingNumbersById.getIfPresent(shipmentId);
+            if (trackingNumber != null) {
+                log.debug("Invalidating cached shipment for ID: {}", shipmentId);
+                shipments.invalidate(trackingNumber);
+            }
+        }
+    }
+
+    /**
+     * Drop every cached lookup result, e.g. after the change stream was interrupted
+     */
+    public void invalidateAll() {
+        shipments.invalidateAll();
+        trackingNumbersById.invalidateAll();
+    }
+
+    /**
+     * Found shipments live for the regular TTL, unknown tracking numbers for the negative TTL
+     */
+    private static final class FoundOrMissingExpiry implements Expiry<String, Optional<Shipment>> {
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        FoundOrMissingExpiry(long ttlNanos, long negativeTtlNanos) {
+            this.ttlNanos = ttlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String trackingNumber, Optional<Shipment> shipment, long currentTime) {
+            return shipment.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String trackingNumber, Optional<Shipment> shipment, long currentTime, long currentDuration) {
+            return expireAfterCreate(trackingNumber, shipment, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String trackingNumber, Optional<Shipment> shipment, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.model.BasicInformation;
+import com.dockeriq.service.model.Shipment;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JSON Merge Patch (RFC 7386) of a shipment, turned into the smallest MongoDB update that
+ * produces the patched document: only fields whose value actually changes are written, nested
+ * objects are updated key by key, removed keys are unset, and tags that only gain entries at the
+ * end are appended with $addToSet instead of rewriting the array.
+ */
+public class ShipmentMergePatch {
+
+    private static final String BASIC_INFORMATION = "basicInformation";
+    private static final String CUSTOMER_FIELDS = "customerFields";
+    private static final String TAGS = "tags";
+
+    // Client-editable fields; everything else is managed by the service or has its own endpoint
+    private static final Set<String> PATCHABLE_FIELDS = Set.of(BASIC_INFORMATION, CUSTOMER_FIELDS, TAGS, "notes", "deviceInformation");
+
+    private final ObjectNode patch;
+
+    private ShipmentMergePatch(ObjectNode patch) {
+        this.patch = patch;
+    }
+
+    /**
+     * Check a merge patch document
+     * @param patch request body
+     * @return merge patch
+     * @throws IllegalArgumentException if the patch is not an object or touches a field that cannot be patched
+     */
+    public static ShipmentMergePatch parse(JsonNode patch) {
+        if (patch == null || !patch.isObject()) {
+            throw new IllegalArgumentException("Merge patch must be a JSON object");
+        }
+        Iterator<String> names = patch.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!PATCHABLE_FIELDS.contains(name)) {
+                throw new IllegalArgumentException(ShipmentProjection.SHIPMENT_FIELDS.contains(name)
+                    ? "Field cannot be patched: " + name
+                    : "Unknown shipment field: " + name);
+            }
+        }
+        return new ShipmentMergePatch((ObjectNode) patch);
+    }
+
+    /**
+     * Top-level fields the patch touches, which are all a diff needs to load
+     * @return field names
+     */
+    public Set<String> fields() {
+        Set<String> fields = new LinkedHashSet<>();
+        patch.fieldNames().forEachRemaining(fields::add);
+        return fields;
+    }
+
+    /**
+     * Compute the update that applies this patch to a shipment. Bean validation runs only on the
+     * values the patch touches.
+     * @param current shipment with at least the patched fields loaded
+     * @param objectMapper mapper used for request bodies
+     * @param validator bean validator
+     * @return update of the changed fields, or null if the patch changes nothing
+     * @throws IllegalArgumentException if a value has the wrong type
+     * @throws ConstraintViolationException if a patched value is invalid
+     */
+    public Update toUpdate(Shipment current, ObjectMapper objectMapper, Validator validator) {
+        Update update = new Update();
+        Set<ConstraintViolation<?>> violations = new LinkedHashSet<>();
+        for (Map.Entry<String, JsonNode> field : (Iterable<Map.Entry<String, JsonNode>>) patch::fields) {
+            String name = field.getKey();
+            JsonNode value = field.getValue();
+            switch (name) {
+                case BASIC_INFORMATION -> diffBasicInformation(current.getBasicInformation(), value, update, violations, objectMapper, validator);
+                case CUSTOMER_FIELDS -> diffCustomerFields(current.getCustomerFields(), value, update);
+                case TAGS -> diffTags(current.getTags(), value, update);
+                default -> diffText(name, "notes".equals(name) ? current.getNotes() : current.getDeviceInformation(),
+                    value, update, violations, validator);
+            }
+        }
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException("Invalid shipment data", violations);
+        }
+        return update.getUpdateObject().isEmpty() ? null : update;
+    }
+
+    private static void diffBasicInformation(BasicInformation current, JsonNode value, Update update,
+                                             Set<ConstraintViolation<?>> violations,
+                                             ObjectMapper objectMapper, Validator validator) {
+        if (!value.isObject()) {
+            throw new IllegalArgumentException(value.isNull()
+                ? "basicInformation cannot be removed"
+                : "basicInformation must be an object");
+        }
+        ObjectNode currentNode = current != null ? objectMapper.valueToTree(current) : objectMapper.createObjectNode();
+        ObjectNode mergedNode = currentNode.deepCopy();
+        Set<String> touched = new LinkedHashSet<>();
+        value.fields().forEachRemaining(property -> {
+            if (!ShipmentProjection.BASIC_INFORMATION_FIELDS.contains(property.getKey())) {
+                throw new IllegalArgumentException("Unknown shipment field: " + BASIC_INFORMATION + "." + property.getKey());
+            }
+            touched.add(property.getKey());
+            if (property.getValue().isNull()) {
+                mergedNode.remove(property.getKey());
+            } else {
+                mergedNode.set(property.getKey(), property.getValue());
+            }
+        });
+
+        BasicInformation merged;
+        try {
+            merged = objectMapper.treeToValue(mergedNode, BasicInformation.class);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid basicInformation: " + e.getMessage(), e);
+        }
+        touched.forEach(property -> violations.addAll(validator.validateProperty(merged, property)));
+
+        // Compare typed values, so e.g. a weight of 10 does not rewrite a stored 10.0
+        ObjectNode mergedTyped = objectMapper.valueToTree(merged);
+        for (String property : touched) {
+            JsonNode before = currentNode.get(property);
+            JsonNode after = mergedTyped.get(property);
+            String path = BASIC_INFORMATION + "." + property;
+            if (after == null || after.isNull()) {
+                if (before != null && !before.isNull()) {
+                    update.unset(path);
+                }
+            } else if (!after.equals(before)) {
+                try {
+                    update.set(path, objectMapper.treeToValue(after, Object.class));
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("Invalid " + path, e);
+                }
+            }
+        }
+    }
+
+    private static void diffCustomerFields(Map<String, String> current, JsonNode value, Update update) {
+        if (value.isNull()) {
+            if (current != null) {
+                update.unset(CUSTOMER_FIELDS);
+            }
+            return;
+        }
+        if (!value.isObject()) {
+            throw new IllegalArgumentException("customerFields must be an object");
+        }
+        value.fields().forEachRemaining(entry -> {
+            String key = entry.getKey();
+            // Keys become part of an update path, so they must not address other fields
+            if (key.isEmpty() || key.indexOf('.') >= 0 || key.startsWith("$")) {
+                throw new IllegalArgumentException("Invalid customerFields key: " + key);
+            }
+            String path = CUSTOMER_FIELDS + "." + key;
+            JsonNode entryValue = entry.getValue();
+            if (entryValue.isNull()) {
+                if (current != null && current.containsKey(key)) {
+                    update.unset(path);
+                }
+            } else if (!entryValue.isTextual()) {
+                throw new IllegalArgumentException(path + " must be a string");
+            } else if (current == null || !entryValue.asText().equals(current.get(key))) {
+                update.set(path, entryValue.asText());
+            }
+        });
+    }
+
+    private static void diffTags(List<String> current, JsonNode value, Update update) {
+        if (value.isNull()) {
+            if (current != null) {
+                update.unset(TAGS);
+            }
+            return;
+        }
+        if (!value.isArray()) {
+            throw new IllegalArgumentException("tags must be an array");
+        }
+        List<String> tags = new ArrayList<>();
+        for (JsonNode tag : value) {
+            if (!tag.isTextual()) {
+                throw new IllegalArgumentException("tags must contain strings");
+            }
+            tags.add(tag.asText());
+        }
+        if (tags.equals(current)) {
+            return;
+        }
+        if (current != null && !current.isEmpty() && tags.size() > current.size()
+                && tags.subList(0, current.size()).equals(current)) {
+            List<String> added = tags.subList(current.size(), tags.size());
+            Set<String> distinct = new HashSet<>(added);
+            if (distinct.size() == added.size() && added.stream().noneMatch(current::contains)) {
+                // Pure append of new tags: $addToSet leaves the existing array untouched
+                update.addToSet(TAGS).each(added.toArray());
+                return;
+            }
+        }
+        update.set(TAGS, tags);
+    }
+
+    private static void diffText(String name, String current, JsonNode value, Update update,
+                                 Set<ConstraintViolation<?>> violations, Validator validator) {
+        if (value.isNull()) {
+            if (current != null) {
+                update.unset(name);
+            }
+            return;
+        }
+        if (!value.isTextual()) {
+            throw new IllegalArgumentException(name + " must be a string");
+        }
+        String text = value.asText();
+        violations.addAll(validator.validateValue(Shipment.class, name, text));
+        if (!text.equals(current)) {
+            update.set(name, text);
+        }
+    }
+}
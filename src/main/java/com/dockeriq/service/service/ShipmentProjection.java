@@ -0,0 +1,117 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.model.BasicInformation;
+import com.dockeriq.service.model.Shipment;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A sparse fieldset of a shipment, parsed from a {@code fields=} request parameter. It becomes a
+ * MongoDB projection, so unrequested fields are neither transferred nor decoded, and it trims
+ * the serialized response to the requested fields. Allowed names are the Shipment properties
+ * and {@code basicInformation.<property>}.
+ */
+public class ShipmentProjection {
+
+    private static final String BASIC_INFORMATION = "basicInformation";
+
+    static final Set<String> SHIPMENT_FIELDS = propertyNames(Shipment.class);
+
+    static final Set<String> BASIC_INFORMATION_FIELDS = propertyNames(BasicInformation.class);
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() { };
+
+    private final Set<String> fields;
+
+    private ShipmentProjection(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Parse a comma-separated field list
+     * @param fields field list, e.g. "trackingNumber,status,basicInformation.destination"
+     * @return projection, or null when no fields were given (the whole shipment)
+     * @throws IllegalArgumentException if a field is not a shipment field
+     */
+    public static ShipmentProjection parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            boolean known = SHIPMENT_FIELDS.contains(name)
+                || (name.startsWith(BASIC_INFORMATION + ".")
+                    && BASIC_INFORMATION_FIELDS.contains(name.substring(BASIC_INFORMATION.length() + 1)));
+            if (!known) {
+                throw new IllegalArgumentException("Unknown shipment field: " + name);
+            }
+            selected.add(name);
+        }
+        if (selected.contains(BASIC_INFORMATION)) {
+            // MongoDB rejects a projection of both a document and one of its sub-fields
+            selected.removeIf(name -> name.startsWith(BASIC_INFORMATION + "."));
+        }
+        return selected.isEmpty() ? null : new ShipmentProjection(selected);
+    }
+
+    /**
+     * Restrict a query to the selected fields plus any the caller needs internally
+     * @param query query to restrict
+     * @param alsoInclude fields required by the caller (e.g. for a pagination cursor) but not returned
+     */
+    public void applyTo(Query query, String... alsoInclude) {
+        fields.forEach(field -> query.fields().include(field));
+        for (String field : alsoInclude) {
+            query.fields().include(field);
+        }
+    }
+
+    /**
+     * Serialize only the selected fields of a shipment
+     * @param shipment shipment loaded with this projection
+     * @param objectMapper mapper used for the response
+     * @return selected fields by name, nested for basicInformation sub-fields
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> toResponse(Shipment shipment, ObjectMapper objectMapper) {
+        Map<String, Object> all = objectMapper.convertValue(shipment, MAP_TYPE);
+        Map<String, Object> selected = new LinkedHashMap<>();
+        for (String field : fields) {
+            if (field.startsWith(BASIC_INFORMATION + ".")) {
+                Map<String, Object> source = (Map<String, Object>) all.get(BASIC_INFORMATION);
+                Object basic = selected.get(BASIC_INFORMATION);
+                if (!(basic instanceof Map)) {
+                    basic = new LinkedHashMap<String, Object>();
+                    selected.put(BASIC_INFORMATION, basic);
+                }
+                String property = field.substring(BASIC_INFORMATION.length() + 1);
+                ((Map<String, Object>) basic).put(property, source != null ? source.get(property) : null);
+            } else {
+                selected.put(field, all.get(field));
+            }
+        }
+        return selected;
+    }
+
+    private static Set<String> propertyNames(Class<?> type) {
+        return Arrays.stream(type.getDeclaredFields())
+            .filter(field -> !Modifier.isStatic(field.getModifiers()))
+            .map(Field::getName)
+            .collect(Collectors.toUnmodifiableSet());
+    }
+}
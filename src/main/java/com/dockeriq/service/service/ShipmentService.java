@@ -1,26 +1,77 @@
 package com.dockeriq.service.service;
 
+import com.dockeriq.service.dto.BulkItemResult;
+import com.dockeriq.service.dto.BulkResponse;
+import com.dockeriq.service.dto.ShipmentPage;
+import com.dockeriq.service.dto.ShipmentSearchFilter;
+import com.dockeriq.service.dto.StoredImage;
+import com.dockeriq.service.model.ImageDescriptor;
 import com.dockeriq.service.model.Shipment;
+import com.dockeriq.service.model.ShipmentStatus;
 import com.dockeriq.service.repository.ShipmentRepository;
 import com.dockeriq.service.utils.DateUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.client.gridfs.model.GridFSFile;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
 
 @Slf4j
 @Service
 public class ShipmentService {
     
+    // Six-digit daily sequence; sequences come from per-node blocks so values are sparse, not consecutive
+    private static final String TRACKING_NUMBER_FORMAT = "DKIQ%s%06d";
+    
+    private static final ShipmentProjection IMAGE_FIELDS = ShipmentProjection.parse("imageIds,images");
+    
+    public static final String BULK_CREATED = "CREATED";
+    public static final String BULK_INVALID = "INVALID";
+    public static final String BULK_FAILED = "FAILED";
+    public static final String BULK_UPDATED = "UPDATED";
+    public static final String BULK_UNCHANGED = "UNCHANGED";
+    public static final String BULK_NOT_FOUND = "NOT_FOUND";
+    public static final String BULK_CONFLICT = "CONFLICT";
+    
+    // Re-reads of a shipment that changed between a patch's read and its conditional write
+    private static final int MAX_PATCH_ATTEMPTS = 3;
+    
     @Autowired
     private ShipmentRepository shipmentRepository;
     
@@ -30,6 +81,24 @@ public class ShipmentService {
     @Autowired
     private SequenceGeneratorService sequenceGenerator;
     
+    @Autowired
+    private ImageVariantService imageVariantService;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private Validator validator;
+    
+    @Value("${dockeriq.shipments.search.facets-max-time:2s}")
+    private Duration facetsMaxTime;
+    
+    @Autowired
+    private ShipmentLookupCache shipmentLookupCache;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
     /**
      * Create a new shipment with images from multipart form data
      * @param shipment shipment data
@@ -39,34 +108,17 @@ public class ShipmentService {
     public Shipment createShipmentWithImages(Shipment shipment, List<MultipartFile> images) {
         log.info("Creating shipment with images. Images count: {}", images != null ? images.size() : 0);
         try {
+            clearImages(shipment);
             // Process images if provided
-            List<String> imageIds = null;
             if (images != null && !images.isEmpty()) {
                 log.debug("Processing {} images for shipment", images.size());
-                List<byte[]> imageData = images.stream()
-                    .map(file -> {
-                        try {
-                            return file.getBytes();
-                        } catch (IOException e) {
-                            log.error("Failed to read image: {}. Error: {}", file.getOriginalFilename(), e.getMessage());
-                            throw new RuntimeException("Failed to read image: " + file.getOriginalFilename(), e);
-                        }
-                    })
-                    .toList();
-                
-                List<String> filenames = images.stream()
-                    .map(MultipartFile::getOriginalFilename)
-                    .toList();
-                
-                List<String> contentTypes = images.stream()
-                    .map(MultipartFile::getContentType)
-                    .toList();
-                
-                imageIds = gridFSService.storeMultipleImages(imageData, filenames, contentTypes);
-                log.debug("Stored {} images in GridFS with IDs: {}", imageIds.size(), imageIds);
+                // Each part is streamed straight into GridFS; no byte[] copy of the image is made
+                List<StoredImage> storedImages = gridFSService.storeMultipleImages(images);
+                attachImages(shipment, storedImages);
+                log.debug("Stored {} images in GridFS with IDs: {}", storedImages.size(), shipment.getImageIds());
+                imageVariantService.generateEagerVariants(shipment.getImageIds());
             }
             
-            shipment.setImageIds(imageIds);
             createShipmentEntity(shipment);
             log.info("Successfully created shipment with ID: {} and tracking number: {}", 
                     shipment.getId(), shipment.getTrackingNumber());
@@ -78,6 +130,31 @@ public class ShipmentService {
         }
     }
     
+    /**
+     * Set the image IDs of a shipment together with their embedded descriptors. Images that
+     * deduplicated onto an existing file pick up that file's stored variants.
+     * @param shipment shipment data
+     * @param storedImages images stored for the shipment, in order
+     */
+    public void attachImages(Shipment shipment, List<StoredImage> storedImages) {
+        List<String> imageIds = storedImages.stream().map(StoredImage::getId).toList();
+        Map<String, Map<String, String>> variantIds = gridFSService.findVariantIds(imageIds);
+        List<ImageDescriptor> descriptors = new ArrayList<>(storedImages.size());
+        for (StoredImage storedImage : storedImages) {
+            ImageDescriptor descriptor = new ImageDescriptor();
+            descriptor.setId(storedImage.getId());
+            descriptor.setFilename(storedImage.getFilename());
+            descriptor.setContentType(storedImage.getContentType());
+            descriptor.setSize(storedImage.getSize());
+            descriptor.setUploadDate(storedImage.getUploadDate());
+            descriptor.setCrc32(storedImage.getCrc32());
+            descriptor.setVariants(variantIds.get(storedImage.getId()));
+            descriptors.add(descriptor);
+        }
+        shipment.setImageIds(imageIds);
+        shipment.setImages(descriptors);
+    }
+    
     /**
      * Create a new shipment without images
      * @param addShipment shipment data
@@ -85,6 +162,7 @@ public class ShipmentService {
      */
     public Shipment createShipment(Shipment shipment) {
         log.info("Creating shipment without images");
+        clearImages(shipment);
         createShipmentEntity(shipment);
         log.info("Successfully created shipment with ID: {} and tracking number: {}", 
                 shipment.getId(), shipment.getTrackingNumber());
@@ -93,26 +171,153 @@ public class ShipmentService {
     
     /**
      * Create shipment entity with common logic
-     * @param addShipment shipment data
-     * @param imageIds list of GridFS image IDs
-     * @return created shipment
+     * @param shipment shipment data
      */
     private void createShipmentEntity(Shipment shipment) {
         log.debug("Creating shipment entity for user: {}", shipment.getCreatedBy());
         
+        shipment.setTrackingNumber(reserveTrackingNumber());
+        initializeNewShipment(shipment);
+        
+        Shipment savedShipment = shipmentRepository.save(shipment);
+        log.debug("Shipment saved to database with ID: {}", savedShipment.getId());
+    }
+    
+    /**
+     * Save a shipment whose ID and tracking number were reserved when its ingest was accepted.
+     * Saving again with the same ID replaces the document, so pipeline retries are idempotent.
+     * @param shipment shipment data with ID and tracking number already set
+     * @return saved shipment
+     */
+    public Shipment createIngestedShipment(Shipment shipment) {
+        log.debug("Saving ingested shipment with tracking number: {}", shipment.getTrackingNumber());
+        initializeNewShipment(shipment);
+        Shipment savedShipment = shipmentRepository.save(shipment);
+        // The tracking number was handed out at accept time, so a lookup may have cached "not found"
+        shipmentLookupCache.invalidate(savedShipment.getTrackingNumber());
+        log.info("Successfully created shipment with ID: {} and tracking number: {}", 
+                savedShipment.getId(), savedShipment.getTrackingNumber());
+        return savedShipment;
+    }
+    
+    /**
+     * Reserve the next tracking number for today
+     * @return tracking number
+     */
+    public String reserveTrackingNumber() {
         String datePrefix = DateUtils.getCurrentDate_YYYYMMDD();
-        Long sequence = sequenceGenerator.generateSequence("shipments_" + datePrefix);
-        String trackingNumber = String.format("DKIQ%s%02d", datePrefix, sequence);
+        long sequence = sequenceGenerator.generateSequence("shipments_" + datePrefix);
+        String trackingNumber = formatTrackingNumber(datePrefix, sequence);
         log.debug("Generated tracking number: {}", trackingNumber);
-        shipment.setTrackingNumber(trackingNumber);
-        
-        shipment.setStatus("In Transit");
-        shipment.setCreatedAt(LocalDateTime.now());
-        shipment.setUpdatedAt(LocalDateTime.now());
+        return trackingNumber;
+    }
+    
+    private static String formatTrackingNumber(String datePrefix, long sequence) {
+        return String.format(TRACKING_NUMBER_FORMAT, datePrefix, sequence);
+    }
+    
+    /**
+     * Drop image references sent by a client; only images stored for the shipment may be attached,
+     * through {@link #attachImages(Shipment, List)}
+     * @param shipment shipment data from a request
+     */
+    public void clearImages(Shipment shipment) {
+        shipment.setImageIds(null);
+        shipment.setImages(null);
+    }
+    
+    /**
+     * Set initial status and timestamps on a new shipment
+     * @param shipment shipment data
+     */
+    private void initializeNewShipment(Shipment shipment) {
+        LocalDateTime now = LocalDateTime.now();
+        shipment.setStatus(ShipmentStatus.IN_TRANSIT);
+        shipment.setCreatedAt(now);
+        shipment.setUpdatedAt(now);
+        shipment.setVersion(0L);
+    }
     
+    /**
+     * Create many shipments at once. Each item is validated on its own, tracking numbers for the
+     * whole batch come from one sequence reservation, and valid items are written with a single
+     * unordered bulk insert.
+     * @param shipments shipment data in request order
+     * @param createdBy user creating the shipments, used when an item has no createdBy
+     * @return per-item results in request order
+     */
+    public BulkResponse createShipmentsBulk(List<Shipment> shipments, String createdBy) {
+        log.info("Creating {} shipments in bulk", shipments.size());
+        BulkItemResult[] results = new BulkItemResult[shipments.size()];
+        List<Integer> validIndexes = new ArrayList<>();
         
-        Shipment savedShipment = shipmentRepository.save(shipment);
-        log.debug("Shipment saved to database with ID: {}", savedShipment.getId());
+        for (int i = 0; i < shipments.size(); i++) {
+            Shipment shipment = shipments.get(i);
+            Set<ConstraintViolation<Shipment>> violations = shipment == null ? Set.of() : validator.validate(shipment);
+            if (shipment == null || !violations.isEmpty()) {
+                BulkItemResult result = itemResult(i, BULK_INVALID);
+                result.setMessage("Invalid shipment data");
+                Map<String, String> errors = new HashMap<>();
+                violations.forEach(violation -> errors.put(violation.getPropertyPath().toString(), violation.getMessage()));
+                result.setErrors(errors);
+                results[i] = result;
+            } else {
+                validIndexes.add(i);
+            }
+        }
+        
+        if (!validIndexes.isEmpty()) {
+            String datePrefix = DateUtils.getCurrentDate_YYYYMMDD();
+            SequenceGeneratorService.SequenceBlock block = sequenceGenerator.reserveBlock("shipments_" + datePrefix, validIndexes.size());
+            
+            List<Shipment> toInsert = new ArrayList<>(validIndexes.size());
+            for (int i = 0; i < validIndexes.size(); i++) {
+                Shipment shipment = shipments.get(validIndexes.get(i));
+                // IDs are assigned up front so every item can be reported whatever the bulk write outcome
+                shipment.setId(new ObjectId().toHexString());
+                if (shipment.getCreatedBy() == null) {
+                    shipment.setCreatedBy(createdBy);
+                }
+                shipment.setTrackingNumber(formatTrackingNumber(datePrefix, block.getFirst() + i));
+                clearImages(shipment);
+                initializeNewShipment(shipment);
+                toInsert.add(shipment);
+            }
+            
+            Map<Integer, String> writeErrors = new HashMap<>();
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Shipment.class)
+                    .insert(toInsert)
+                    .execute();
+            } catch (BulkOperationException e) {
+                e.getErrors().forEach(error -> writeErrors.put(error.getIndex(), error.getMessage()));
+                log.warn("Bulk shipment insert completed with {} write errors", writeErrors.size());
+            }
+            
+            for (int i = 0; i < validIndexes.size(); i++) {
+                Shipment shipment = toInsert.get(i);
+                String writeError = writeErrors.get(i);
+                BulkItemResult result = itemResult(validIndexes.get(i), writeError == null ? BULK_CREATED : BULK_FAILED);
+                if (writeError == null) {
+                    result.setId(shipment.getId());
+                    result.setTrackingNumber(shipment.getTrackingNumber());
+                } else {
+                    result.setMessage(writeError);
+                }
+                results[validIndexes.get(i)] = result;
+            }
+        }
+        
+        BulkResponse response = BulkResponse.of(Arrays.asList(results), BULK_CREATED);
+        log.info("Bulk shipment creation finished. Created: {}, Failed: {}", response.getSucceeded(), response.getFailed());
+        return response;
+    }
+    
+    private static BulkItemResult itemResult(int index, String status) {
+        BulkItemResult result = new BulkItemResult();
+        result.setIndex(index);
+        result.setStatus(status);
+        return result;
     }
     
     /**
@@ -121,8 +326,26 @@ public class ShipmentService {
      * @return shipment if found
      */
     public Optional<Shipment> getShipmentById(String id) {
+        return getShipmentById(id, null);
+    }
+    
+    /**
+     * Get shipment by ID, loading only the projected fields
+     * @param id shipment ID
+     * @param projection fields to load, or null for the whole shipment
+     * @return shipment if found
+     */
+    public Optional<Shipment> getShipmentById(String id, ShipmentProjection projection) {
         log.debug("Retrieving shipment by ID: {}", id);
-        Optional<Shipment> shipment = shipmentRepository.findById(id);
+        Optional<Shipment> shipment;
+        if (projection == null) {
+            shipment = shipmentRepository.findById(id);
+        } else {
+            Query query = Query.query(Criteria.where("id").is(id));
+            // The version is the shipment's ETag
+            projection.applyTo(query, "version");
+            shipment = Optional.ofNullable(mongoTemplate.findOne(query, Shipment.class));
+        }
         if (shipment.isPresent()) {
             log.debug("Shipment found with ID: {}", id);
         } else {
@@ -138,8 +361,28 @@ public class ShipmentService {
      * @return shipment if found
      */
     public Optional<Shipment> getShipmentByTrackingNumber(String trackingNumber) {
+        return getShipmentByTrackingNumber(trackingNumber, null);
+    }
+    
+    /**
+     * Get shipment by tracking number, loading only the projected fields. Whole shipments are read
+     * through the lookup cache; projected lookups use a cached result when there is one.
+     * @param trackingNumber tracking number
+     * @param projection fields to load, or null for the whole shipment
+     * @return shipment if found; may have more than the projected fields and must not be modified
+     */
+    public Optional<Shipment> getShipmentByTrackingNumber(String trackingNumber, ShipmentProjection projection) {
         log.debug("Retrieving shipment by tracking number: {}", trackingNumber);
-        Optional<Shipment> shipment = shipmentRepository.findByTrackingNumber(trackingNumber);
+        Optional<Shipment> shipment = projection != null ? shipmentLookupCache.getIfPresent(trackingNumber) : null;
+        if (shipment != null) {
+            log.debug("Using cached shipment for tracking number: {}", trackingNumber);
+        } else if (projection == null) {
+            shipment = shipmentLookupCache.get(trackingNumber);
+        } else {
+            Query query = Query.query(Criteria.where("trackingNumber").is(trackingNumber));
+            projection.applyTo(query);
+            shipment = Optional.ofNullable(mongoTemplate.findOne(query, Shipment.class));
+        }
         if (shipment.isPresent()) {
             log.debug("Shipment found with tracking number: {}", trackingNumber);
         } else {
@@ -149,40 +392,412 @@ public class ShipmentService {
     }
     
     /**
-     * Get all shipments
-     * @return list of all shipments
+     * Get one page of shipments, newest first. Pages are keyed on (createdAt, _id) rather than an
+     * offset, so every page is a bounded range scan of the createdAt_id index whatever its depth.
+     * @param cursor cursor returned with the previous page, or null for the first page
+     * @param limit maximum number of shipments on the page
+     * @param projection fields to load, or null for whole shipments
+     * @return page of shipments with the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public ShipmentPage getShipmentsPage(String cursor, int limit, ShipmentProjection projection) {
+        log.debug("Retrieving shipments page. Cursor: {}, Limit: {}", cursor, limit);
+        ShipmentPage page = findPage(List.of(), cursor, limit, projection);
+        log.debug("Retrieved {} shipments. More: {}", page.getItems().size(), page.getNext() != null);
+        return page;
+    }
+    
+    /**
+     * Search shipments, newest first, with the same keyset pagination as {@link #getShipmentsPage}.
+     * Every filter leads one of the (field, createdAt, _id) indexes, so each query shape is an index
+     * range scan that also yields the sort order; further filters are applied to the scanned documents.
+     * @param filter search filters; unset filters match everything
+     * @param cursor cursor returned with the previous page, or null for the first page
+     * @param limit maximum number of shipments on the page
+     * @param projection fields to load, or null for whole shipments
+     * @param withFacets whether to count all matching shipments per status and carrier
+     * @return page of matching shipments, with facet counts if requested and counted in time
+     * @throws IllegalArgumentException if the cursor is malformed, or facets are requested without an indexed filter
+     */
+    public ShipmentPage searchShipments(ShipmentSearchFilter filter, String cursor, int limit,
+                                        ShipmentProjection projection, boolean withFacets) {
+        log.debug("Searching shipments. Filter: {}, Cursor: {}, Limit: {}", filter, cursor, limit);
+        if (withFacets && !hasIndexedFilter(filter)) {
+            // Without one, counting reads the whole collection
+            throw new IllegalArgumentException("facets require a status, createdBy, destination, carrier, priority or tag filter");
+        }
+        List<Criteria> criteria = searchCriteria(filter);
+        ShipmentPage page = findPage(criteria, cursor, limit, projection);
+        if (withFacets) {
+            page.setFacets(countFacets(criteria));
+        }
+        log.debug("Found {} shipments. More: {}", page.getItems().size(), page.getNext() != null);
+        return page;
+    }
+    
+    private ShipmentPage findPage(List<Criteria> criteria, String cursor, int limit, ShipmentProjection projection) {
+        Query query = new Query();
+        criteria.forEach(query::addCriteria);
+        if (cursor != null && !cursor.isBlank()) {
+            query.addCriteria(afterCursor(cursor));
+        }
+        if (projection != null) {
+            // The cursor of the next page is built from createdAt and _id
+            projection.applyTo(query, "createdAt", "id");
+        }
+        query.with(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id")));
+        // One extra document tells whether another page exists without a count query
+        query.limit(limit + 1);
+        
+        List<Shipment> shipments = mongoTemplate.find(query, Shipment.class);
+        ShipmentPage page = new ShipmentPage();
+        page.setLimit(limit);
+        if (shipments.size() > limit) {
+            shipments = shipments.subList(0, limit);
+            page.setNext(encodeCursor(shipments.get(limit - 1)));
+        }
+        page.setItems(shipments);
+        return page;
+    }
+    
+    private static List<Criteria> searchCriteria(ShipmentSearchFilter filter) {
+        List<Criteria> criteria = new ArrayList<>();
+        if (filter.getStatus() != null && !filter.getStatus().isEmpty()) {
+            criteria.add(filter.getStatus().size() == 1
+                ? Criteria.where("status").is(filter.getStatus().get(0))
+                : Criteria.where("status").in(filter.getStatus()));
+        }
+        if (filter.getFrom() != null || filter.getTo() != null) {
+            Criteria createdAt = Criteria.where("createdAt");
+            if (filter.getFrom() != null) {
+                createdAt.gte(filter.getFrom());
+            }
+            if (filter.getTo() != null) {
+                createdAt.lt(filter.getTo());
+            }
+            criteria.add(createdAt);
+        }
+        if (filter.getCreatedBy() != null && !filter.getCreatedBy().isBlank()) {
+            criteria.add(Criteria.where("createdBy").is(filter.getCreatedBy()));
+        }
+        if (filter.getDestination() != null && !filter.getDestination().isBlank()) {
+            criteria.add(Criteria.where("basicInformation.destination").is(filter.getDestination()));
+        }
+        if (filter.getCarrier() != null && !filter.getCarrier().isBlank()) {
+            criteria.add(Criteria.where("basicInformation.carrier").is(filter.getCarrier()));
+        }
+        if (filter.getPriority() != null && !filter.getPriority().isBlank()) {
+            criteria.add(Criteria.where("basicInformation.priority").is(filter.getPriority()));
+        }
+        if (filter.getTag() != null && !filter.getTag().isEmpty()) {
+            criteria.add(Criteria.where("tags").all(filter.getTag()));
+        }
+        return criteria;
+    }
+    
+    /**
+     * Whether the filter has an equality filter that leads one of the search indexes
+     */
+    private static boolean hasIndexedFilter(ShipmentSearchFilter filter) {
+        return (filter.getStatus() != null && !filter.getStatus().isEmpty())
+            || (filter.getCreatedBy() != null && !filter.getCreatedBy().isBlank())
+            || (filter.getDestination() != null && !filter.getDestination().isBlank())
+            || (filter.getCarrier() != null && !filter.getCarrier().isBlank())
+            || (filter.getPriority() != null && !filter.getPriority().isBlank())
+            || (filter.getTag() != null && !filter.getTag().isEmpty());
+    }
+    
+    /**
+     * Count all shipments matching the filters per status and per carrier, in a single
+     * aggregation that reads the matching documents once for both facets. The match is served by
+     * the index of an equality filter, and the count is bounded in time since a broad filter can
+     * still match much of the collection.
+     * @return facet counts, or null if counting took longer than the configured limit
      */
-    public List<Shipment> getAllShipments() {
-        log.debug("Retrieving all shipments");
-        List<Shipment> shipments = shipmentRepository.findAll();
-        log.debug("Retrieved {} shipments from database", shipments.size());
-        return shipments;
+    private Map<String, Map<String, Long>> countFacets(List<Criteria> criteria) {
+        Criteria match = new Criteria().andOperator(criteria);
+        Aggregation aggregation = Aggregation.newAggregation(
+            Aggregation.match(match),
+            Aggregation.facet(
+                    Aggregation.group("status").count().as("count"),
+                    Aggregation.sort(Sort.Direction.DESC, "count"))
+                .as("status")
+                .and(
+                    Aggregation.group("basicInformation.carrier").count().as("count"),
+                    Aggregation.sort(Sort.Direction.DESC, "count"))
+                .as("carrier"))
+            .withOptions(AggregationOptions.builder().maxTime(facetsMaxTime).build());
+        Document result;
+        try {
+            result = mongoTemplate.aggregate(aggregation, Shipment.class, Document.class).getUniqueMappedResult();
+        } catch (RuntimeException e) {
+            if (e instanceof QueryTimeoutException
+                    || NestedExceptionUtils.getMostSpecificCause(e) instanceof MongoExecutionTimeoutException) {
+                log.warn("Facet counts took longer than {}; returning the page without them", facetsMaxTime);
+                return null;
+            }
+            throw e;
+        }
+        
+        Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+        for (String facet : List.of("status", "carrier")) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            if (result != null) {
+                for (Document bucket : result.getList(facet, Document.class, List.of())) {
+                    Object value = bucket.get("_id");
+                    counts.put(value != null ? value.toString() : "none", ((Number) bucket.get("count")).longValue());
+                }
+            }
+            facets.put(facet, counts);
+        }
+        return facets;
+    }
+    
+    static String encodeCursor(Shipment last) {
+        String key = last.getCreatedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    static Criteria afterCursor(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = key.lastIndexOf('|');
+            LocalDateTime createdAt = LocalDateTime.parse(key.substring(0, separator));
+            ObjectId id = new ObjectId(key.substring(separator + 1));
+            return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(createdAt),
+                Criteria.where("createdAt").is(createdAt).and("_id").lt(id));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
     }
     
     /**
-     * Update shipment status
+     * Update shipment status with a single atomic findAndModify that sets only the status fields,
+     * so concurrent writers never overwrite each other's changes to the rest of the document
      * @param id shipment ID
      * @param status new status
+     * @param expectedStatus status the shipment must currently have, or null to update unconditionally
+     * @param updatedBy user updating the shipment
+     * @param projection fields of the updated shipment to return, or null for the whole shipment
+     * @return updated shipment, or the unchanged shipment if it already has the new status
+     * @throws IllegalArgumentException if the new or expected status is not a known status
+     * @throws IllegalStateException if the shipment does not have the expected status or may not move to the new one
+     */
+    public Shipment updateShipmentStatus(String id, String status, String expectedStatus, String updatedBy,
+                                         ShipmentProjection projection) {
+        log.info("Updating shipment status. ID: {}, New status: {}, Expected status: {}, Updated by: {}",
+                id, status, expectedStatus, updatedBy);
+        String targetStatus = requireKnownStatus(status);
+        // Stored statuses are canonical, so the expected one is compared in the same form
+        String expected = expectedStatus != null ? requireKnownStatus(expectedStatus) : null;
+        
+        Query query = Query.query(Criteria.where("_id").is(id));
+        if (expected == null) {
+            // Checked by the update itself, so a concurrent status change cannot slip past it
+            query.addCriteria(Criteria.where("status").nin(ShipmentStatus.blockedSources(targetStatus)));
+        } else if (!expected.equals(targetStatus)) {
+            if (!ShipmentStatus.canTransition(expected, targetStatus)) {
+                throw new IllegalStateException("Cannot change status from " + expected + " to " + targetStatus);
+            }
+            query.addCriteria(Criteria.where("status").is(expected));
+        }
+        if (projection != null) {
+            // The tracking number keys the lookup cache entry to evict
+            projection.applyTo(query, "trackingNumber");
+        }
+        Update update = new Update()
+            .set("status", targetStatus)
+            .set("updatedAt", LocalDateTime.now())
+            .set("lastModifiedBy", updatedBy)
+            .inc("version", 1);
+        // Expecting the new status itself is only a check; there is nothing to write
+        Shipment updatedShipment = targetStatus.equals(expected) ? null : mongoTemplate.findAndModify(query, update,
+            FindAndModifyOptions.options().returnNew(true), Shipment.class);
+        
+        if (updatedShipment == null) {
+            // Tell an unchanged status and a failed precondition apart from a missing shipment
+            Query current = Query.query(Criteria.where("_id").is(id));
+            if (projection != null) {
+                projection.applyTo(current, "status");
+            }
+            Shipment shipment = mongoTemplate.findOne(current, Shipment.class);
+            if (shipment != null && targetStatus.equals(shipment.getStatus())
+                    && (expected == null || expected.equals(targetStatus))) {
+                // Like an UNCHANGED bulk item: the shipment already has the requested status
+                log.info("Shipment already has status {}. ID: {}", targetStatus, id);
+                return shipment;
+            }
+            if (shipment != null && expected != null) {
+                log.warn("Shipment status changed concurrently. ID: {}, Expected: {}, Current: {}",
+                        id, expected, shipment.getStatus());
+                throw new IllegalStateException("Shipment " + id + " has status " + shipment.getStatus()
+                        + ", expected " + expected);
+            }
+            if (shipment != null) {
+                log.warn("Rejected status transition. ID: {}, From: {}, To: {}", id, shipment.getStatus(), targetStatus);
+                throw new IllegalStateException("Cannot change status from " + shipment.getStatus() + " to " + targetStatus);
+            }
+            log.warn("Shipment not found for status update. ID: {}", id);
+            throw new RuntimeException("Shipment not found with id: " + id);
+        }
+        shipmentLookupCache.invalidate(updatedShipment.getTrackingNumber());
+        log.info("Successfully updated shipment status. ID: {}, New status: {}", id, targetStatus);
+        return updatedShipment;
+    }
+    
+    /**
+     * Move many shipments to one status. Current statuses are read with one query so every item
+     * gets its own result, then all allowed transitions are written with a single updateMany whose
+     * filter re-checks the transition, so a status changed in between is never overwritten.
+     * @param ids shipment IDs, or null when selecting by tracking number
+     * @param trackingNumbers tracking numbers, used when ids is null
+     * @param status new status
+     * @param updatedBy user updating the shipments
+     * @return per-item results in request order
+     * @throws IllegalArgumentException if the new status is not a known status
+     */
+    public BulkResponse updateShipmentStatusBulk(List<String> ids, List<String> trackingNumbers, String status, String updatedBy) {
+        String targetStatus = requireKnownStatus(status);
+        boolean byId = ids != null;
+        List<String> keys = byId ? ids : trackingNumbers;
+        log.info("Updating status of {} shipments to {}. By: {}", keys.size(), targetStatus, byId ? "id" : "tracking number");
+        
+        Query currentQuery = Query.query(Criteria.where(byId ? "_id" : "trackingNumber").in(new HashSet<>(keys)));
+        currentQuery.fields().include("trackingNumber", "status");
+        Map<String, Shipment> current = new HashMap<>();
+        for (Shipment shipment : mongoTemplate.find(currentQuery, Shipment.class)) {
+            current.put(byId ? shipment.getId() : shipment.getTrackingNumber(), shipment);
+        }
+        
+        BulkItemResult[] results = new BulkItemResult[keys.size()];
+        Map<String, Shipment> toUpdate = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Shipment shipment = current.get(keys.get(i));
+            if (shipment == null) {
+                results[i] = itemResult(i, BULK_NOT_FOUND);
+                results[i].setId(byId ? keys.get(i) : null);
+                results[i].setTrackingNumber(byId ? null : keys.get(i));
+                continue;
+            }
+            String itemStatus;
+            if (targetStatus.equals(shipment.getStatus())) {
+                itemStatus = BULK_UNCHANGED;
+            } else if (!ShipmentStatus.canTransition(shipment.getStatus(), targetStatus)) {
+                itemStatus = BULK_INVALID;
+            } else {
+                itemStatus = BULK_UPDATED;
+                toUpdate.put(shipment.getId(), shipment);
+            }
+            results[i] = itemResult(i, itemStatus);
+            results[i].setId(shipment.getId());
+            results[i].setTrackingNumber(shipment.getTrackingNumber());
+            if (BULK_INVALID.equals(itemStatus)) {
+                results[i].setMessage("Cannot change status from " + shipment.getStatus() + " to " + targetStatus);
+            }
+        }
+        
+        if (!toUpdate.isEmpty()) {
+            // Stored with millisecond precision; truncated so the value can be matched below
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            Query updateQuery = Query.query(Criteria.where("_id").in(toUpdate.keySet())
+                .and("status").nin(ShipmentStatus.blockedSources(targetStatus)));
+            Update update = new Update()
+                .set("status", targetStatus)
+                .set("updatedAt", now)
+                .set("lastModifiedBy", updatedBy)
+                .inc("version", 1);
+            long modified = mongoTemplate.updateMulti(updateQuery, update, Shipment.class).getModifiedCount();
+            
+            if (modified < toUpdate.size()) {
+                // Some shipments changed status since they were read; find out which were written
+                Query writtenQuery = Query.query(Criteria.where("_id").in(toUpdate.keySet())
+                    .and("status").is(targetStatus).and("updatedAt").is(now));
+                writtenQuery.fields().include("_id");
+                Set<String> written = new HashSet<>();
+                mongoTemplate.find(writtenQuery, Shipment.class).forEach(shipment -> written.add(shipment.getId()));
+                for (BulkItemResult result : results) {
+                    if (BULK_UPDATED.equals(result.getStatus()) && !written.contains(result.getId())) {
+                        result.setStatus(BULK_CONFLICT);
+                        result.setMessage("Shipment status changed during the update");
+                    }
+                }
+                log.warn("Bulk status update conflicted on {} shipments", toUpdate.size() - written.size());
+            }
+            toUpdate.values().forEach(shipment -> shipmentLookupCache.invalidate(shipment.getTrackingNumber()));
+        }
+        
+        BulkResponse response = BulkResponse.of(Arrays.asList(results), BULK_UPDATED, BULK_UNCHANGED);
+        log.info("Bulk status update finished. Succeeded: {}, Failed: {}", response.getSucceeded(), response.getFailed());
+        return response;
+    }
+    
+    /**
+     * Apply a JSON Merge Patch to a shipment, writing only the fields it changes. The update is
+     * conditional on the version the diff was computed from; without an expected version a
+     * concurrent change is retried against the new state, with one it fails.
+     * @param id shipment ID
+     * @param patch merge patch document
+     * @param expectedVersion version the client last saw (If-Match), or null
      * @param updatedBy user updating the shipment
-     * @return updated shipment
+     * @return patched shipment
+     * @throws IllegalArgumentException if the patch is malformed or touches fields that cannot be patched
+     * @throws jakarta.validation.ConstraintViolationException if a patched value is invalid
+     * @throws IllegalStateException if the shipment is not at the expected version
      */
-    public Shipment updateShipmentStatus(String id, String status, String updatedBy) {
-        log.info("Updating shipment status. ID: {}, New status: {}, Updated by: {}", id, status, updatedBy);
+    public Shipment patchShipment(String id, JsonNode patch, Long expectedVersion, String updatedBy) {
+        log.info("Patching shipment. ID: {}, Expected version: {}, Updated by: {}", id, expectedVersion, updatedBy);
+        ShipmentMergePatch mergePatch = ShipmentMergePatch.parse(patch);
         
-        return shipmentRepository.findById(id)
-            .map(shipment -> {
-                log.debug("Found shipment with ID: {} for status update", id);
-                shipment.setStatus(status);
-                shipment.setUpdatedAt(LocalDateTime.now());
-                shipment.setLastModifiedBy(updatedBy);
-                Shipment updatedShipment = shipmentRepository.save(shipment);
-                log.info("Successfully updated shipment status. ID: {}, New status: {}", id, status);
-                return updatedShipment;
-            })
-            .orElseThrow(() -> {
-                log.warn("Shipment not found for status update. ID: {}", id);
-                return new RuntimeException("Shipment not found with id: " + id);
-            });
+        for (int attempt = 1; ; attempt++) {
+            // Only the patched fields are needed for the diff
+            Query read = Query.query(Criteria.where("_id").is(id));
+            read.fields().include("trackingNumber", "version");
+            mergePatch.fields().forEach(field -> read.fields().include(field));
+            Shipment current = mongoTemplate.findOne(read, Shipment.class);
+            if (current == null) {
+                log.warn("Shipment not found for patch. ID: {}", id);
+                throw new RuntimeException("Shipment not found with id: " + id);
+            }
+            long version = current.getVersion() != null ? current.getVersion() : 0L;
+            if (expectedVersion != null && expectedVersion != version) {
+                log.warn("Shipment version mismatch. ID: {}, Expected: {}, Current: {}", id, expectedVersion, version);
+                throw new IllegalStateException("Shipment " + id + " is at version " + version + ", not " + expectedVersion);
+            }
+            
+            Update update = mergePatch.toUpdate(current, objectMapper, validator);
+            if (update == null) {
+                log.debug("Patch changes nothing on shipment ID: {}", id);
+                return shipmentRepository.findById(id)
+                    .orElseThrow(() -> new RuntimeException("Shipment not found with id: " + id));
+            }
+            update.set("updatedAt", LocalDateTime.now())
+                .set("lastModifiedBy", updatedBy)
+                .inc("version", 1);
+            // Shipments created before versioning have no version field; they count as version 0
+            Query write = Query.query(Criteria.where("_id").is(id)
+                .and("version").in(version == 0L ? Arrays.asList(0L, null) : List.of(version)));
+            Shipment patched = mongoTemplate.findAndModify(write, update,
+                FindAndModifyOptions.options().returnNew(true), Shipment.class);
+            if (patched != null) {
+                shipmentLookupCache.invalidate(patched.getTrackingNumber());
+                log.info("Successfully patched shipment. ID: {}, Version: {}", id, patched.getVersion());
+                return patched;
+            }
+            if (expectedVersion != null || attempt == MAX_PATCH_ATTEMPTS) {
+                log.warn("Shipment modified concurrently during patch. ID: {}", id);
+                throw new IllegalStateException("Shipment " + id + " was modified concurrently");
+            }
+            log.debug("Shipment ID: {} changed during patch; retrying (attempt {})", id, attempt);
+        }
+    }
+    
+    private static String requireKnownStatus(String status) {
+        String knownStatus = ShipmentStatus.normalize(status);
+        if (knownStatus == null) {
+            throw new IllegalArgumentException("Unknown shipment status: " + status);
+        }
+        return knownStatus;
     }
     
     /**
@@ -196,13 +811,13 @@ public class ShipmentService {
             Shipment shipment = shipmentOpt.get();
             log.debug("Found shipment with ID: {} for deletion", id);
             
-            // Delete associated images from GridFS
+            // Release associated images; GridFS files shared with other shipments are kept
             if (shipment.getImageIds() != null && !shipment.getImageIds().isEmpty()) {
-                log.debug("Deleting {} associated images from GridFS", shipment.getImageIds().size());
+                log.debug("Releasing {} associated images from GridFS", shipment.getImageIds().size());
                 for (String imageId : shipment.getImageIds()) {
                     try {
-                        gridFSService.deleteImage(imageId);
-                        log.debug("Deleted image from GridFS with ID: {}", imageId);
+                        gridFSService.releaseImage(imageId);
+                        log.debug("Released image from GridFS with ID: {}", imageId);
                     } catch (Exception e) {
                         log.warn("Failed to delete image from GridFS with ID: {}. Error: {}", imageId, e.getMessage());
                     }
@@ -211,6 +826,7 @@ public class ShipmentService {
             
             // Delete shipment
             shipmentRepository.deleteById(id);
+            shipmentLookupCache.invalidate(shipment.getTrackingNumber());
             log.info("Successfully deleted shipment with ID: {}", id);
         } else {
             log.warn("Shipment not found for deletion. ID: {}", id);
@@ -225,8 +841,8 @@ public class ShipmentService {
     public List<Map<String, Object>> getImageMetadataByTrackingNumber(String trackingNumber) {
         log.info("Retrieving image metadata for shipment with tracking number: {}", trackingNumber);
         
-        // First get the shipment to find associated image IDs
-        Optional<Shipment> shipment = getShipmentByTrackingNumber(trackingNumber);
+        // First get the shipment to find associated image IDs; nothing else of it is needed
+        Optional<Shipment> shipment = getShipmentByTrackingNumber(trackingNumber, IMAGE_FIELDS);
         if (shipment.isEmpty()) {
             log.warn("Shipment not found with tracking number: {}", trackingNumber);
             throw new RuntimeException("Shipment not found with tracking number: " + trackingNumber);
@@ -242,15 +858,28 @@ public class ShipmentService {
         
         log.debug("Found {} images for shipment with tracking number: {}", imageIds.size(), trackingNumber);
         
-        // Retrieve image metadata for each image
+        // Shipments written since descriptors were introduced (or backfilled) carry everything needed.
+        // Descriptors are always written together with the image IDs; an image whose file was already
+        // gone at backfill has none, just as the GridFS lookup below would skip it.
+        List<ImageDescriptor> descriptors = shipmentData.getImages();
+        if (descriptors != null) {
+            List<Map<String, Object>> imageMetadata = new ArrayList<>(descriptors.size());
+            for (ImageDescriptor descriptor : descriptors) {
+                imageMetadata.add(toImageMetadata(descriptor));
+            }
+            log.info("Successfully retrieved {} embedded image metadata for shipment with tracking number: {}", 
+                    imageMetadata.size(), trackingNumber);
+            return imageMetadata;
+        }
+        
+        // Retrieve image metadata for all images at once; only uncached images hit the database
+        Map<String, GridFSFile> fileInfos = gridFSService.getImageInfos(imageIds);
         List<Map<String, Object>> imageMetadata = new ArrayList<>();
         for (String imageId : imageIds) {
-            try {
-                Map<String, Object> metadata = getImageMetadataById(imageId);
-                if (metadata != null) {
-                    imageMetadata.add(metadata);
-                }
-            } catch (Exception e) {
+            GridFSFile fileInfo = fileInfos.get(imageId);
+            if (fileInfo != null) {
+                imageMetadata.add(toImageMetadata(imageId, fileInfo));
+            } else {
                 log.warn("Failed to retrieve metadata for image with ID: {}. Skipping...", imageId);
             }
         }
@@ -275,25 +904,9 @@ public class ShipmentService {
                 return null;
             }
             
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("id", imageId);
-            metadata.put("filename", fileInfo.getFilename());
-            metadata.put("size", fileInfo.getLength());
-            metadata.put("uploadDate", fileInfo.getUploadDate());
-            
-            // Get content type from metadata
-            String contentType = "image/jpeg"; // default
-            if (fileInfo.getMetadata() != null && fileInfo.getMetadata().getString("contentType") != null) {
-                contentType = fileInfo.getMetadata().getString("contentType");
-            }
-            metadata.put("contentType", contentType);
-            
-            // Generate image URLs for frontend
-            metadata.put("url", "/shipments/images/" + imageId);
-            metadata.put("apiUrl", "/api/images/" + imageId);
-            
+            Map<String, Object> metadata = toImageMetadata(imageId, fileInfo);
             log.debug("Successfully retrieved image metadata with ID: {}, Filename: {}, Content-Type: {}", 
-                    imageId, fileInfo.getFilename(), contentType);
+                    imageId, fileInfo.getFilename(), metadata.get("contentType"));
             return metadata;
             
         } catch (Exception e) {
@@ -301,4 +914,39 @@ public class ShipmentService {
             return null;
         }
     }
+    
+    private Map<String, Object> toImageMetadata(String imageId, GridFSFile fileInfo) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("id", imageId);
+        metadata.put("filename", fileInfo.getFilename());
+        metadata.put("size", fileInfo.getLength());
+        metadata.put("uploadDate", fileInfo.getUploadDate());
+        
+        // Get content type from metadata
+        String contentType = "image/jpeg"; // default
+        if (fileInfo.getMetadata() != null && fileInfo.getMetadata().getString("contentType") != null) {
+            contentType = fileInfo.getMetadata().getString("contentType");
+        }
+        metadata.put("contentType", contentType);
+        
+        // Generate image URLs for frontend
+        metadata.put("url", "/shipments/images/" + imageId);
+        metadata.put("apiUrl", "/api/images/" + imageId);
+        return metadata;
+    }
+    
+    private Map<String, Object> toImageMetadata(ImageDescriptor descriptor) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("id", descriptor.getId());
+        metadata.put("filename", descriptor.getFilename());
+        metadata.put("size", descriptor.getSize());
+        metadata.put("uploadDate", descriptor.getUploadDate());
+        metadata.put("contentType", descriptor.getContentType() != null ? descriptor.getContentType() : "image/jpeg");
+        if (descriptor.getVariants() != null && !descriptor.getVariants().isEmpty()) {
+            metadata.put("variants", descriptor.getVariants());
+        }
+        metadata.put("url", "/shipments/images/" + descriptor.getId());
+        metadata.put("apiUrl", "/api/images/" + descriptor.getId());
+        return metadata;
+    }
 }
@@ -2,6 +2,7 @@ package com.dockeriq.service.service;
 
 import com.dockeriq.service.model.User;
 import com.dockeriq.service.repository.UserRepository;
+import com.dockeriq.service.security.UserPrincipalCache;
 import com.dockeriq.service.service.AuthService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +21,9 @@ public class UserService {
 
     @Autowired
     private AuthService authService;
+
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
     
     public List<User> getAllUsers() {
         log.debug("Retrieving all users from database");
@@ -99,6 +103,9 @@ public class UserService {
                     existingDetails.setPasswordReset(user.getPasswordReset());
                     
                     User updatedDetails = userRepository.save(existingDetails);
+                    // Role, active flag or email may have changed; drop both old and new keys
+                    userPrincipalCache.invalidate(email);
+                    userPrincipalCache.invalidate(updatedDetails.getEmail());
                     log.info("Successfully updated user details for email: {}", email);
                     return updatedDetails;
                 })
@@ -114,6 +121,7 @@ public class UserService {
         if (user.isPresent()) {
             log.debug("Found user for deletion with email: {}", email);
             userRepository.deleteById(user.get().getId());
+            userPrincipalCache.invalidate(email);
             log.info("Successfully deleted user with email: {}", email);
         } else {
             log.warn("User not found for deletion. Email: {}", email);
@@ -0,0 +1,161 @@
+package com.dockeriq.service.utils;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A change stream that survives errors. The container stops a change stream for good after any
+ * error, so it is registered again with exponential backoff, resuming after the last event handled.
+ * The token is dropped, and the stream starts from now, only when the server says it cannot resume
+ * or after an invalidate event; events missed then are lost, so the owner is told on every error to
+ * drop whatever may have gone stale.
+ */
+@Slf4j
+public class RestartingChangeStream {
+
+    // Server errors after which the stream cannot resume from its token and has to start from now
+    private static final Set<Integer> NON_RESUMABLE_ERRORS = Set.of(260, 280, 286); // InvalidResumeToken, ChangeStreamFatalError, ChangeStreamHistoryLost
+
+    private final MessageListenerContainer messageListenerContainer;
+
+    private final String collection;
+
+    private final Consumer<ChangeStreamRequest.ChangeStreamRequestBuilder<Document>> requestOptions;
+
+    private final Consumer<ChangeStreamDocument<Document>> eventHandler;
+
+    private final Runnable errorHandler;
+
+    private final long restartBackoffMillis;
+
+    private final long maxRestartBackoffMillis;
+
+    private final ScheduledExecutorService restartScheduler;
+
+    // Resume token of the last handled event
+    private volatile BsonDocument lastResumeToken;
+
+    private volatile Subscription subscription;
+
+    private volatile int consecutiveFailures;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param messageListenerContainer container to register the stream with
+     * @param collection watched collection
+     * @param requestOptions further request options, such as filters and full document lookup
+     * @param eventHandler called for each event; the stream resumes after the last event it returned from
+     * @param errorHandler called on every error, before the restart is scheduled
+     * @param restartBackoff delay before the first restart, doubling per consecutive failure
+     * @param maxRestartBackoff upper bound of the restart delay
+     */
+    public RestartingChangeStream(MessageListenerContainer messageListenerContainer,
+                                  String collection,
+                                  Consumer<ChangeStreamRequest.ChangeStreamRequestBuilder<Document>> requestOptions,
+                                  Consumer<ChangeStreamDocument<Document>> eventHandler,
+                                  Runnable errorHandler,
+                                  Duration restartBackoff,
+                                  Duration maxRestartBackoff) {
+        this.messageListenerContainer = messageListenerContainer;
+        this.collection = collection;
+        this.requestOptions = requestOptions;
+        this.eventHandler = eventHandler;
+        this.errorHandler = errorHandler;
+        this.restartBackoffMillis = Math.max(restartBackoff.toMillis(), 1);
+        this.maxRestartBackoffMillis = Math.max(maxRestartBackoff.toMillis(), this.restartBackoffMillis);
+        this.restartScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, collection + "-change-stream-restart");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Register the change stream
+     */
+    public void start() {
+        subscribe();
+    }
+
+    /**
+     * Stop restarting the change stream; the container stops the stream itself
+     */
+    public void stop() {
+        stopped = true;
+        restartScheduler.shutdownNow();
+    }
+
+    private void subscribe() {
+        BsonDocument resumeAfter = lastResumeToken;
+        ChangeStreamRequest.ChangeStreamRequestBuilder<Document> builder = ChangeStreamRequest.builder(this::onMessage)
+                .collection(collection);
+        requestOptions.accept(builder);
+        if (resumeAfter != null) {
+            builder.resumeAfter(resumeAfter);
+        }
+        subscription = messageListenerContainer.register(builder.build(), Document.class, this::onError);
+        log.info("Registered change stream listener on {} collection{}", collection,
+                resumeAfter != null ? ", resuming after the last handled event" : "");
+    }
+
+    private void onError(Throwable error) {
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(error);
+        if (cause instanceof MongoException mongoException && NON_RESUMABLE_ERRORS.contains(mongoException.getCode())) {
+            lastResumeToken = null;
+        }
+        int failures = ++consecutiveFailures;
+        long delay = Math.min(restartBackoffMillis << Math.min(failures - 1, 20), maxRestartBackoffMillis);
+        log.warn("Change stream on {} collection failed; restarting in {} ms{}. Error: {}", collection, delay,
+                lastResumeToken != null ? " after the last handled event" : " from now", error.getMessage());
+        try {
+            errorHandler.run();
+        } catch (RuntimeException e) {
+            log.warn("Failed to handle change stream error on {} collection. Error: {}", collection, e.getMessage(), e);
+        }
+        if (!stopped) {
+            restartScheduler.schedule(this::restart, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void restart() {
+        Subscription failed = subscription;
+        if (failed != null) {
+            messageListenerContainer.remove(failed);
+        }
+        try {
+            subscribe();
+        } catch (RuntimeException e) {
+            onError(e);
+        }
+    }
+
+    private void onMessage(Message<ChangeStreamDocument<Document>, Document> message) {
+        ChangeStreamDocument<Document> event = message.getRaw();
+        if (event == null) {
+            return;
+        }
+        consecutiveFailures = 0;
+        eventHandler.accept(event);
+        // A stream cannot resume after an invalidate event (collection dropped or renamed)
+        lastResumeToken = event.getOperationType() == OperationType.INVALIDATE ? null : event.getResumeToken();
+    }
+}
@@ -0,0 +1,56 @@
+package com.dockeriq.service.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShipmentStatusTest {
+
+    @Test
+    void normalizeAcceptsCaseQuotesAndUnderscores() {
+        assertThat(ShipmentStatus.normalize("at_dock")).isEqualTo(ShipmentStatus.AT_DOCK);
+        assertThat(ShipmentStatus.normalize("\"In Transit\"")).isEqualTo(ShipmentStatus.IN_TRANSIT);
+        assertThat(ShipmentStatus.normalize(" DELIVERED ")).isEqualTo(ShipmentStatus.DELIVERED);
+    }
+
+    @Test
+    void normalizeRejectsUnknownStatuses() {
+        assertThat(ShipmentStatus.normalize("Lost")).isNull();
+        assertThat(ShipmentStatus.normalize(null)).isNull();
+    }
+
+    @Test
+    void openStatusesMoveToEachOtherAndToFinalStatuses() {
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.IN_TRANSIT, ShipmentStatus.AT_DOCK)).isTrue();
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.AT_DOCK, ShipmentStatus.IN_TRANSIT)).isTrue();
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.IN_TRANSIT, ShipmentStatus.DELIVERED)).isTrue();
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.AT_DOCK, ShipmentStatus.CANCELLED)).isTrue();
+    }
+
+    @Test
+    void finalStatusesDoNotMove() {
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.DELIVERED, ShipmentStatus.IN_TRANSIT)).isFalse();
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.DELIVERED, ShipmentStatus.CANCELLED)).isFalse();
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.CANCELLED, ShipmentStatus.AT_DOCK)).isFalse();
+    }
+
+    @Test
+    void unknownSourceStatusesMayMoveAnywhere() {
+        assertThat(ShipmentStatus.canTransition("Legacy", ShipmentStatus.DELIVERED)).isTrue();
+        assertThat(ShipmentStatus.canTransition(null, ShipmentStatus.AT_DOCK)).isTrue();
+    }
+
+    @Test
+    void statusesDoNotMoveToThemselves() {
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.IN_TRANSIT, ShipmentStatus.IN_TRANSIT)).isFalse();
+        assertThat(ShipmentStatus.canTransition(ShipmentStatus.AT_DOCK, ShipmentStatus.AT_DOCK)).isFalse();
+    }
+
+    @Test
+    void blockedSourcesAreTheFinalStatusesAndTheTargetItself() {
+        assertThat(ShipmentStatus.blockedSources(ShipmentStatus.AT_DOCK))
+            .containsExactlyInAnyOrder(ShipmentStatus.AT_DOCK, ShipmentStatus.DELIVERED, ShipmentStatus.CANCELLED);
+        assertThat(ShipmentStatus.blockedSources(ShipmentStatus.DELIVERED))
+            .containsExactlyInAnyOrder(ShipmentStatus.DELIVERED, ShipmentStatus.CANCELLED);
+    }
+}
@@ -0,0 +1,156 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.dto.StoredImage;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSFindIterable;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the upload deduplication against an in-memory stand-in for the files collection's
+ * reference counts, so concurrent uploads can be interleaved step by step.
+ */
+class GridFSServiceDeduplicationTest {
+
+    private final Map<ObjectId, Integer> refCounts = new HashMap<>();
+
+    private final GridFSBucket gridFSBucket = mock(GridFSBucket.class);
+
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> filesCollection = mock(MongoCollection.class);
+
+    private GridFSService gridFSService;
+
+    @BeforeEach
+    void setUp() {
+        gridFSService = new GridFSService(4, 16, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(gridFSService, "gridFSBucket", gridFSBucket);
+        ReflectionTestUtils.setField(gridFSService, "gridFSFilesCollection", filesCollection);
+
+        GridFSFindIterable found = mock(GridFSFindIterable.class);
+        when(gridFSBucket.find(any(Bson.class))).thenAnswer(invocation -> {
+            ObjectId id = invocation.getArgument(0, Bson.class).toBsonDocument().getObjectId("_id").getValue();
+            when(found.first()).thenReturn(refCounts.containsKey(id)
+                ? new GridFSFile(new BsonObjectId(id), "image.jpg", 3, 1024, new Date(), new Document())
+                : null);
+            return found;
+        });
+        when(filesCollection.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class)))
+            .thenAnswer(invocation -> update(invocation.getArgument(0, Bson.class).toBsonDocument(),
+                    invocation.getArgument(1, Bson.class).toBsonDocument()));
+    }
+
+    @Test
+    void newerUploadDefersToTheOlderCopy() {
+        ObjectId older = new ObjectId();
+        refCounts.put(older, 1);
+        ObjectId newer = new ObjectId();
+
+        StoredImage stored = upload(newer);
+
+        assertThat(stored.getId()).isEqualTo(older.toHexString());
+        assertThat(refCounts).containsEntry(older, 2);
+        verify(gridFSBucket).delete(newer);
+    }
+
+    @Test
+    void copyReferencedByANewerUploadIsKeptWhenItDefersToAnOlderOne() {
+        // A is closed but has not checked for duplicates yet; B closes and references A
+        ObjectId older = new ObjectId();
+        ObjectId a = new ObjectId();
+        refCounts.put(a, 1);
+        ObjectId b = new ObjectId();
+        StoredImage storedB = upload(b);
+        assertThat(storedB.getId()).isEqualTo(a.toHexString());
+        assertThat(refCounts).containsEntry(a, 2);
+
+        // The older copy C finishes later, and A now finds it
+        refCounts.put(older, 1);
+        StoredImage storedA = upload(a);
+
+        assertThat(storedA.getId()).isEqualTo(a.toHexString());
+        assertThat(refCounts).containsEntry(a, 2).containsEntry(older, 1);
+        verify(gridFSBucket, never()).delete(a);
+    }
+
+    private StoredImage upload(ObjectId id) {
+        GridFSUploadStream uploadStream = mock(GridFSUploadStream.class);
+        when(uploadStream.getObjectId()).thenReturn(id);
+        when(gridFSBucket.openUploadStream(anyString(), any(GridFSUploadOptions.class))).thenAnswer(invocation -> {
+            refCounts.putIfAbsent(id, 1);
+            return uploadStream;
+        });
+        return gridFSService.storeImage(new ByteArrayInputStream(new byte[] {1, 2, 3}), "image.jpg", "image/jpeg");
+    }
+
+    // Applies the few filters and updates the deduplication issues against the reference counts
+    private Document update(BsonDocument filter, BsonDocument update) {
+        ObjectId match = null;
+        for (Map.Entry<ObjectId, Integer> entry : refCounts.entrySet()) {
+            if (matches(filter, entry.getKey(), entry.getValue())
+                    && (match == null || entry.getKey().compareTo(match) < 0)) {
+                match = entry.getKey();
+            }
+        }
+        if (match == null) {
+            return null;
+        }
+        if (update.containsKey("$inc")) {
+            refCounts.merge(match, update.getDocument("$inc").getInt32("metadata.refCount").getValue(), Integer::sum);
+        } else {
+            refCounts.put(match, update.getDocument("$set").getInt32("metadata.refCount").getValue());
+        }
+        return new Document("_id", match).append("metadata", new Document("refCount", refCounts.get(match)));
+    }
+
+    private static boolean matches(BsonDocument filter, ObjectId id, int refCount) {
+        if (filter.containsKey("$and")) {
+            return filter.getArray("$and").stream()
+                .allMatch(clause -> matches(clause.asDocument(), id, refCount));
+        }
+        if (filter.containsKey("_id")) {
+            BsonDocument idFilter = filter.isDocument("_id") ? filter.getDocument("_id") : null;
+            if (idFilter == null && !filter.getObjectId("_id").getValue().equals(id)) {
+                return false;
+            }
+            if (idFilter != null && id.compareTo(idFilter.getObjectId("$lt").getValue()) >= 0) {
+                return false;
+            }
+        }
+        if (filter.containsKey("metadata.refCount")) {
+            if (filter.isDocument("metadata.refCount")) {
+                return refCount > filter.getDocument("metadata.refCount").getInt32("$gt").getValue();
+            }
+            return refCount == filter.getInt32("metadata.refCount").getValue();
+        }
+        return true;
+    }
+}
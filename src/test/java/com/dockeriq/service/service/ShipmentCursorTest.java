@@ -0,0 +1,48 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.model.Shipment;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShipmentCursorTest {
+
+    @Test
+    void cursorResumesAfterTheLastShipmentOfThePage() {
+        Shipment last = new Shipment();
+        last.setId(new ObjectId().toHexString());
+        last.setCreatedAt(LocalDateTime.of(2024, 1, 15, 10, 30, 0, 123_000_000));
+
+        Document criteria = ShipmentService.afterCursor(ShipmentService.encodeCursor(last)).getCriteriaObject();
+
+        List<?> or = criteria.getList("$or", Document.class);
+        assertThat(or).hasSize(2);
+        assertThat(or.get(0)).isEqualTo(new Document("createdAt", new Document("$lt", last.getCreatedAt())));
+        assertThat(or.get(1)).isEqualTo(new Document("createdAt", last.getCreatedAt())
+            .append("_id", new Document("$lt", new ObjectId(last.getId()))));
+    }
+
+    @Test
+    void cursorIsUrlSafe() {
+        Shipment last = new Shipment();
+        last.setId(new ObjectId().toHexString());
+        last.setCreatedAt(LocalDateTime.now());
+
+        assertThat(ShipmentService.encodeCursor(last)).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        assertThatThrownBy(() -> ShipmentService.afterCursor("not a cursor"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ShipmentService.afterCursor("MjAyNC0wMS0xNVQxMDozMHxub3QtYW4taWQ"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
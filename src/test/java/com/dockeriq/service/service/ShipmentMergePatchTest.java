@@ -0,0 +1,165 @@
+package com.dockeriq.service.service;
+
+import com.dockeriq.service.model.BasicInformation;
+import com.dockeriq.service.model.Shipment;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShipmentMergePatchTest {
+
+    private static ValidatorFactory validatorFactory;
+
+    private static Validator validator;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Shipment current;
+
+    @BeforeAll
+    static void createValidator() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+    }
+
+    @AfterAll
+    static void closeValidator() {
+        validatorFactory.close();
+    }
+
+    @BeforeEach
+    void createShipment() {
+        BasicInformation basicInformation = new BasicInformation();
+        basicInformation.setShipmentTitle("Pallets");
+        basicInformation.setDestination("Berlin");
+        basicInformation.setCarrier("UPS");
+        basicInformation.setWeight(10.0);
+
+        current = new Shipment();
+        current.setBasicInformation(basicInformation);
+        current.setCustomerFields(Map.of("po", "123"));
+        current.setTags(new ArrayList<>(List.of("fragile")));
+        current.setNotes("Leave at gate");
+    }
+
+    @Test
+    void onlyChangedNestedFieldsAreSet() {
+        Document update = toUpdate("{\"basicInformation\": {\"destination\": \"Hamburg\", \"carrier\": \"UPS\", \"weight\": 10}}");
+
+        assertThat(update).containsOnlyKeys("$set");
+        assertThat(update.get("$set", Document.class))
+            .containsExactlyEntriesOf(Map.of("basicInformation.destination", "Hamburg"));
+    }
+
+    @Test
+    void nullRemovesFields() {
+        Document update = toUpdate("{\"basicInformation\": {\"carrier\": null}, \"notes\": null, \"customerFields\": {\"po\": null}}");
+
+        assertThat(update).containsOnlyKeys("$unset");
+        assertThat(update.get("$unset", Document.class))
+            .containsOnlyKeys("basicInformation.carrier", "notes", "customerFields.po");
+    }
+
+    @Test
+    void unchangedValuesProduceNoUpdate() {
+        Update update = ShipmentMergePatch.parse(json("{\"notes\": \"Leave at gate\", \"tags\": [\"fragile\"], \"customerFields\": {\"po\": \"123\"}}"))
+            .toUpdate(current, objectMapper, validator);
+
+        assertThat(update).isNull();
+    }
+
+    @Test
+    void appendedTagsUseAddToSet() {
+        Document update = toUpdate("{\"tags\": [\"fragile\", \"cold\"]}");
+
+        assertThat(update).containsOnlyKeys("$addToSet");
+        assertThat(update.get("$addToSet", Document.class)).containsKey("tags");
+    }
+
+    @Test
+    void reorderedOrRemovedTagsReplaceTheArray() {
+        current.setTags(new ArrayList<>(List.of("fragile", "cold")));
+
+        Document update = toUpdate("{\"tags\": [\"cold\"]}");
+
+        assertThat(update).containsOnlyKeys("$set");
+        assertThat(update.get("$set", Document.class).get("tags")).isEqualTo(List.of("cold"));
+    }
+
+    @Test
+    void fieldsListsTheTouchedTopLevelFields() {
+        ShipmentMergePatch patch = ShipmentMergePatch.parse(json("{\"notes\": \"x\", \"basicInformation\": {\"carrier\": \"DHL\"}}"));
+
+        assertThat(patch.fields()).containsExactly("notes", "basicInformation");
+    }
+
+    @Test
+    void managedAndUnknownFieldsAreRejected() {
+        assertThatThrownBy(() -> ShipmentMergePatch.parse(json("{\"status\": \"Delivered\"}")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("cannot be patched");
+        assertThatThrownBy(() -> ShipmentMergePatch.parse(json("{\"colour\": \"red\"}")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Unknown shipment field");
+        assertThatThrownBy(() -> ShipmentMergePatch.parse(json("[]")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void customerFieldKeysCannotAddressOtherFields() {
+        assertThatThrownBy(() -> toUpdate("{\"customerFields\": {\"a.b\": \"x\"}}"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> toUpdate("{\"customerFields\": {\"$set\": \"x\"}}"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void patchedValuesAreValidated() {
+        assertThatThrownBy(() -> toUpdate("{\"basicInformation\": {\"destination\": \"\"}}"))
+            .isInstanceOf(ConstraintViolationException.class);
+        assertThatThrownBy(() -> toUpdate("{\"deviceInformation\": \"" + "x".repeat(501) + "\"}"))
+            .isInstanceOf(ConstraintViolationException.class);
+    }
+
+    @Test
+    void wrongValueTypesAreRejected() {
+        assertThatThrownBy(() -> toUpdate("{\"basicInformation\": {\"weight\": \"heavy\"}}"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> toUpdate("{\"tags\": \"fragile\"}"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> toUpdate("{\"basicInformation\": null}"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Document toUpdate(String patch) {
+        Update update = ShipmentMergePatch.parse(json(patch)).toUpdate(current, objectMapper, validator);
+        assertThat(update).isNotNull();
+        return update.getUpdateObject();
+    }
+
+    private JsonNode json(String value) {
+        try {
+            return objectMapper.readTree(value);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
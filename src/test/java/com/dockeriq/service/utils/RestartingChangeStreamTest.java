@@ -0,0 +1,111 @@
+package com.dockeriq.service.utils;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListener;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.util.ErrorHandler;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RestartingChangeStreamTest {
+
+    private static final BsonDocument TOKEN = new BsonDocument("_data", new BsonString("8263A1"));
+
+    private final MessageListenerContainer container = mock(MessageListenerContainer.class);
+
+    private final AtomicInteger errors = new AtomicInteger();
+
+    private RestartingChangeStream changeStream;
+
+    @BeforeEach
+    void setUp() {
+        when(container.register(any(ChangeStreamRequest.class), eq(Document.class), any(ErrorHandler.class)))
+            .thenReturn(mock(Subscription.class));
+        changeStream = new RestartingChangeStream(container, "shipments", request -> { }, event -> { },
+                errors::incrementAndGet, Duration.ofMillis(1), Duration.ofMillis(1));
+        changeStream.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        changeStream.stop();
+    }
+
+    @Test
+    void resumesAfterTheLastEventWhenRestarted() {
+        deliver(OperationType.UPDATE);
+        fail(new RuntimeException("Connection reset"));
+
+        assertThat(errors).hasValue(1);
+        assertThat(registered(2).getRequestOptions().getChangeStreamOptions().getResumeToken()).contains(TOKEN);
+    }
+
+    @Test
+    void startsFromNowWhenTheTokenCannotResume() {
+        deliver(OperationType.UPDATE);
+        fail(new MongoCommandException(new BsonDocument("ok", new BsonInt32(0))
+                .append("code", new BsonInt32(286))
+                .append("errmsg", new BsonString("Resume point no longer in the oplog")), new ServerAddress()));
+
+        assertThat(registered(2).getRequestOptions().getChangeStreamOptions().getResumeToken()).isEmpty();
+    }
+
+    @Test
+    void startsFromNowAfterAnInvalidateEvent() {
+        deliver(OperationType.INVALIDATE);
+        fail(new RuntimeException("Change stream invalidated"));
+
+        assertThat(registered(2).getRequestOptions().getChangeStreamOptions().getResumeToken()).isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(OperationType operationType) {
+        ChangeStreamDocument<Document> event = mock(ChangeStreamDocument.class);
+        when(event.getOperationType()).thenReturn(operationType);
+        when(event.getResumeToken()).thenReturn(TOKEN);
+        Message<ChangeStreamDocument<Document>, Document> message = mock(Message.class);
+        when(message.getRaw()).thenReturn(event);
+        MessageListener<ChangeStreamDocument<Document>, Document> listener =
+                (MessageListener<ChangeStreamDocument<Document>, Document>) registered(1).getMessageListener();
+        listener.onMessage(message);
+    }
+
+    private void fail(Throwable error) {
+        ArgumentCaptor<ErrorHandler> errorHandler = ArgumentCaptor.forClass(ErrorHandler.class);
+        verify(container).register(any(ChangeStreamRequest.class), eq(Document.class), errorHandler.capture());
+        errorHandler.getValue().handleError(error);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ChangeStreamRequest<Document> registered(int registrations) {
+        ArgumentCaptor<ChangeStreamRequest<Document>> request = ArgumentCaptor.forClass(ChangeStreamRequest.class);
+        verify(container, timeout(5000).times(registrations))
+            .register(request.capture(), eq(Document.class), any(ErrorHandler.class));
+        return request.getValue();
+    }
+}